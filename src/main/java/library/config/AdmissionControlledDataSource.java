@@ -0,0 +1,74 @@
+package library.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// DataSource, выдающий соединения только с разрешения DbAdmissionLimiter; разрешение освобождает close()
+public class AdmissionControlledDataSource extends DelegatingDataSource {
+    private final DbAdmissionLimiter limiter;
+
+    public AdmissionControlledDataSource(DataSource target, DbAdmissionLimiter limiter) {
+        super(target);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Thread owner = admit();
+        try {
+            return guarded(obtainTargetDataSource().getConnection(), owner);
+        } catch (SQLException | RuntimeException e) {
+            limiter.release(owner);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Thread owner = admit();
+        try {
+            return guarded(obtainTargetDataSource().getConnection(username, password), owner);
+        } catch (SQLException | RuntimeException e) {
+            limiter.release(owner);
+            throw e;
+        }
+    }
+
+    private Thread admit() throws SQLException {
+        try {
+            return limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения с БД прервано", e);
+        }
+    }
+
+    private Connection guarded(Connection connection, Thread owner) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        try {
+                            connection.close();
+                        } finally {
+                            // Повторный close не должен вернуть разрешение дважды
+                            if (closed.compareAndSet(false, true)) {
+                                limiter.release(owner);
+                            }
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+}
@@ -0,0 +1,33 @@
+package library.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Оборачивает основной DataSource (тот, что получают JPA, JdbcTemplate и Flyway) в AdmissionControlledDataSource.
+ * С репликой это маршрутизатор ReplicaDataSourceConfig, и разрешение берётся на соединение с любой из баз.
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.db-admission.enabled", havingValue = "true")
+public class DbAdmissionConfig {
+
+    // Статический метод и ленивый ObjectProvider: постпроцессор создаётся раньше остальных бинов
+    @Bean
+    public static BeanPostProcessor dbAdmissionDataSourcePostProcessor(ObjectProvider<DbAdmissionLimiter> limiter) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && "dataSource".equals(beanName)
+                        && !(bean instanceof AdmissionControlledDataSource)) {
+                    return new AdmissionControlledDataSource(dataSource, limiter.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
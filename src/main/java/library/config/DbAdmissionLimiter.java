@@ -0,0 +1,88 @@
+package library.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import library.util.AdmissionRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничитель соединений с БД. С виртуальными потоками число одновременных запросов почти
+ * не ограничено, и без него все они выстроились бы в очередь к пулу HikariCP.
+ * Разрешение берётся при получении соединения (см. AdmissionControlledDataSource) и держится
+ * до его закрытия, то есть всю транзакцию, - поэтому число занятых соединений не превышает числа разрешений,
+ * через что бы ни шёл доступ: репозитории, JdbcTemplate или EntityManager.
+ * Честный семафор пропускает потоки по порядку, а не дождавшиеся за timeout получают 503.
+ * Поток, уже держащий соединение, следующее получает без ожидания: иначе он мог бы получить 503
+ * посреди своей транзакции или ждать сам себя.
+ */
+@Component
+@ConditionalOnProperty(name = "library.db-admission.enabled", havingValue = "true")
+@Slf4j
+public class DbAdmissionLimiter {
+    private final Semaphore permits;
+    private final Duration timeout;
+    // Сколько соединений открыто у потока, взявшего разрешение; поток без соединений в таблице не хранится
+    private final Map<Thread, Integer> holders = new ConcurrentHashMap<>();
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public DbAdmissionLimiter(@Value("${library.db-admission.permits:10}") int permits,
+                              @Value("${library.db-admission.timeout:2s}") Duration timeout,
+                              MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(permits, true);
+        this.timeout = timeout;
+
+        Gauge.builder("library.db.admission.available", this.permits, Semaphore::availablePermits)
+                .description("Свободные разрешения на соединение с БД")
+                .register(meterRegistry);
+        Gauge.builder("library.db.admission.queued", this.permits, Semaphore::getQueueLength)
+                .description("Потоки, ожидающие разрешения на соединение с БД")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("library.db.admission.wait")
+                .description("Ожидание разрешения на соединение с БД")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = meterRegistry.counter("library.db.admission.rejected");
+        log.info("Ограничитель соединений с БД включён: {} разрешений, ожидание не дольше {}", permits, timeout);
+    }
+
+    /**
+     * Учитывает новое соединение текущего потока; первое соединение потока ждёт разрешения.
+     * Возвращает поток-владельца, которого нужно передать в release при закрытии соединения.
+     */
+    public Thread acquire() throws InterruptedException {
+        Thread thread = Thread.currentThread();
+        if (holders.computeIfPresent(thread, (t, open) -> open + 1) != null) {
+            return thread;
+        }
+
+        long start = System.nanoTime();
+        boolean acquired = permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            rejected.increment();
+            log.warn("Соединение с БД не выдано: нет свободного разрешения за {}", timeout);
+            throw new AdmissionRejectedException("База данных перегружена, повторите запрос позже");
+        }
+        holders.put(thread, 1);
+        return thread;
+    }
+
+    // Закрытие соединения; соединение может закрываться и в другом потоке, поэтому владелец передаётся явно
+    public void release(Thread owner) {
+        if (holders.computeIfPresent(owner, (t, open) -> open > 1 ? open - 1 : null) == null) {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package library.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import library.services.CatalogVersion;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Кэш отрендеренных списков /book и /people по версии каталога (CatalogVersion).
+ * Ключ - путь, отсортированные параметры запроса и версия; после любой записи версия меняется,
+ * и старые страницы просто вытесняются по размеру. Браузер получает слабый ETag с версией
+ * и 304 без обращения к БД, пока каталог не изменился.
+ */
+@Component
+@Slf4j
+public class PageCacheFilter extends OncePerRequestFilter {
+    private static final Set<String> CACHED_PATHS = Set.of("/book", "/people");
+
+    private record CachedPage(byte[] body, String contentType) {
+    }
+
+    private final CatalogVersion catalogVersion;
+    private final Cache<String, CachedPage> pages;
+    private final boolean enabled;
+
+    public PageCacheFilter(CatalogVersion catalogVersion, MeterRegistry meterRegistry,
+                           @Value("${library.page-cache.enabled:true}") boolean enabled,
+                           @Value("${library.page-cache.max-size:32MB}") DataSize maxSize) {
+        this.catalogVersion = catalogVersion;
+        this.enabled = enabled;
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, CachedPage page) -> key.length() + page.body().length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "library.page-cache");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"GET".equals(request.getMethod()) || !CACHED_PATHS.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Версию берём до рендеринга: если запись завершится во время рендеринга, страница ляжет под старой версией
+        long version = catalogVersion.current();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (new ServletWebRequest(request, response).checkNotModified("W/\"" + version + "\"")) {
+            return; // 304: у браузера страница этой версии
+        }
+
+        String key = key(request, version);
+        CachedPage cached = pages.getIfPresent(key);
+        if (cached != null) {
+            log.debug("Страница {} отдана из кэша", key);
+            response.setContentType(cached.contentType());
+            response.setContentLength(cached.body().length);
+            response.getOutputStream().write(cached.body());
+            return;
+        }
+
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+            String contentType = wrapper.getContentType();
+            if (wrapper.getStatus() == HttpServletResponse.SC_OK && contentType != null && contentType.startsWith("text/html")) {
+                pages.put(key, new CachedPage(wrapper.getContentAsByteArray(), contentType));
+            }
+        } finally {
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private static String key(HttpServletRequest request, long version) {
+        StringBuilder key = new StringBuilder(request.getRequestURI()).append('?');
+        Map<String, String[]> parameters = new TreeMap<>(request.getParameterMap());
+        parameters.forEach((name, values) -> {
+            for (String value : values) {
+                key.append(name).append('=').append(value).append('&');
+            }
+        });
+        return key.append('@').append(version).toString();
+    }
+}
@@ -0,0 +1,77 @@
+package library.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+
+/**
+ * Число SQL-запросов на HTTP-запрос: гистограмма library.request.queries по шаблону URI,
+ * а в dev-режиме (library.metrics.query-count-header) ещё и заголовок X-Query-Count для поиска N+1.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class QueryCountFilter extends OncePerRequestFilter {
+    public static final String HEADER = "X-Query-Count";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${library.metrics.query-count-header:false}")
+    private boolean headerEnabled;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Потоковые ответы (выгрузки и SSE) нельзя буферизовать, а их запросы идут в другом потоке
+        String uri = request.getRequestURI();
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return uri.endsWith("/export") || uri.endsWith("/stream") || uri.endsWith("/availability")
+                || uri.startsWith("/actuator")
+                || (accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        QueryCountInspector.reset();
+        // Заголовок нужно выставить до отправки тела, поэтому в dev-режиме ответ буферизуется
+        HttpServletResponse target = headerEnabled ? new ContentCachingResponseWrapper(response) : response;
+        try {
+            chain.doFilter(request, target);
+        } finally {
+            int queries = QueryCountInspector.count();
+            QueryCountInspector.clear();
+            record(request, queries);
+
+            if (target instanceof ContentCachingResponseWrapper wrapper) {
+                wrapper.setHeader(HEADER, String.valueOf(queries));
+                wrapper.copyBodyToResponse();
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, int queries) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("library.request.queries")
+                .description("Число SQL-запросов на один HTTP-запрос")
+                .tag("method", request.getMethod())
+                .tag("uri", pattern == null ? "UNKNOWN" : pattern.toString())
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(queries);
+        log.debug("{} {}: {} SQL-запросов", request.getMethod(), request.getRequestURI(), queries);
+    }
+}
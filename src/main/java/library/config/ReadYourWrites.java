@@ -0,0 +1,53 @@
+package library.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+
+/**
+ * Время последней записи клиента для чтения своих записей при работе с репликой.
+ * В пределах запроса оно хранится в потоке, между запросами - в cookie: после выдачи книги
+ * и редиректа следующая страница читается с основной БД, пока не истечёт окно sticky-window.
+ */
+public final class ReadYourWrites {
+    public static final String COOKIE = "library_last_write";
+
+    private static final ThreadLocal<Long> LAST_WRITE = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    static void markWrite(Duration window) {
+        long now = System.currentTimeMillis();
+        LAST_WRITE.set(now);
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            HttpServletResponse response = servletAttributes.getResponse();
+            if (response != null && !response.isCommitted()) {
+                Cookie cookie = new Cookie(COOKIE, String.valueOf(now));
+                cookie.setPath("/");
+                cookie.setHttpOnly(true);
+                cookie.setMaxAge((int) Math.max(1, window.toSeconds()));
+                response.addCookie(cookie);
+            }
+        }
+    }
+
+    static boolean isSticky(Duration window) {
+        Long lastWrite = LAST_WRITE.get();
+        return lastWrite != null && System.currentTimeMillis() - lastWrite < window.toMillis();
+    }
+
+    static void restore(long lastWriteMillis) {
+        LAST_WRITE.set(lastWriteMillis);
+    }
+
+    static void clear() {
+        LAST_WRITE.remove();
+    }
+}
@@ -0,0 +1,40 @@
+package library.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Переносит время последней записи клиента из cookie в поток запроса (см. ReadYourWrites)
+@Component
+@ConditionalOnProperty(name = "library.replica.enabled", havingValue = "true")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (ReadYourWrites.COOKIE.equals(cookie.getName())) {
+                    try {
+                        ReadYourWrites.restore(Long.parseLong(cookie.getValue()));
+                    } catch (NumberFormatException ignored) {
+                        // Испорченная cookie - читаем как обычно
+                    }
+                }
+            }
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadYourWrites.clear();
+        }
+    }
+}
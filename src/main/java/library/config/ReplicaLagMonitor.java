@@ -0,0 +1,75 @@
+package library.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Периодически измеряет отставание реплики запросом lag-query (миллисекунды).
+ * Пока отставание неизвестно (до первой проверки или при ошибке), оно считается бесконечным
+ * и чтения идут на основную БД.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+    private static final long UNKNOWN = Long.MAX_VALUE;
+
+    private final JdbcTemplate replica;
+    private final String lagQuery;
+    private final Duration interval;
+    private final MeterRegistry meterRegistry;
+    private volatile long lagMillis = UNKNOWN;
+    private ScheduledExecutorService scheduler;
+
+    public ReplicaLagMonitor(DataSource replica, String lagQuery, Duration interval, MeterRegistry meterRegistry) {
+        this.replica = new JdbcTemplate(replica);
+        this.lagQuery = lagQuery;
+        this.interval = interval;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("library.datasource.replica.lag", this, monitor -> monitor.lagMillis == UNKNOWN ? Double.NaN : monitor.lagMillis)
+                .description("Отставание реплики, мс (NaN - неизвестно)")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    private void check() {
+        try {
+            Number lag = replica.queryForObject(lagQuery, Number.class);
+            lagMillis = lag == null ? 0 : Math.max(0, lag.longValue());
+        } catch (DataAccessException e) {
+            if (lagMillis != UNKNOWN) {
+                log.warn("Не удалось измерить отставание реплики, чтения переключены на основную БД: {}", e.getMessage());
+            }
+            lagMillis = UNKNOWN;
+        }
+    }
+}
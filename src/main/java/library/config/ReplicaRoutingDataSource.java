@@ -0,0 +1,119 @@
+package library.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Выбирает БД для соединения: транзакции @Transactional(readOnly = true) читают с реплики, всё остальное
+ * идёт на основную БД. Чтение тоже уходит на основную БД, если клиент недавно писал (sticky-window)
+ * или реплика отстаёт больше max-lag. Каждое решение считается в library.datasource.route (target, reason).
+ *
+ * Работает только за LazyConnectionDataSourceProxy: соединение должно браться при первом запросе,
+ * когда признак readOnly транзакции уже выставлен. И только если Hibernate отдаёт соединение после каждой
+ * транзакции (ReplicaDataSourceConfig): под open-in-view сессия живёт весь запрос, и иначе первая транзакция
+ * закрепила бы соединение выбранной БД до конца запроса - запись после чтения ушла бы на реплику.
+ *
+ * Реплика может отставать, поэтому сессия Hibernate, читающая с неё, только берёт сущности из кэша
+ * второго уровня (CacheMode.GET), но не кладёт их туда: иначе старая строка с реплики попала бы в общий кэш
+ * сразу после того, как запись на основной БД его сбросила, и её видели бы все, включая самого писавшего.
+ * После транзакции прежний режим кэша возвращается: следующие транзакции той же сессии снова заполняют кэш.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY, REPLICA
+    }
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final Duration stickyWindow;
+    private final Duration maxLag;
+    private final Counter writes;
+    private final Counter reads;
+    private final Counter sticky;
+    private final Counter lagging;
+
+    public ReplicaRoutingDataSource(ReplicaLagMonitor lagMonitor, Duration stickyWindow, Duration maxLag,
+                                    MeterRegistry meterRegistry) {
+        this.lagMonitor = lagMonitor;
+        this.stickyWindow = stickyWindow;
+        this.maxLag = maxLag;
+        this.writes = route(meterRegistry, Route.PRIMARY, "read-write");
+        this.reads = route(meterRegistry, Route.REPLICA, "read-only");
+        this.sticky = route(meterRegistry, Route.PRIMARY, "sticky");
+        this.lagging = route(meterRegistry, Route.PRIMARY, "lag");
+    }
+
+    private static Counter route(MeterRegistry meterRegistry, Route target, String reason) {
+        return Counter.builder("library.datasource.route")
+                .description("Выбор БД для соединения")
+                .tag("target", target.name().toLowerCase())
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            rememberWrite();
+            writes.increment();
+            return Route.PRIMARY;
+        }
+        if (ReadYourWrites.isSticky(stickyWindow)) {
+            sticky.increment();
+            return Route.PRIMARY;
+        }
+        long lag = lagMonitor.lagMillis();
+        if (lag > maxLag.toMillis()) {
+            log.debug("Реплика отстаёт на {} мс, чтение с основной БД", lag == Long.MAX_VALUE ? "?" : lag);
+            lagging.increment();
+            return Route.PRIMARY;
+        }
+        reads.increment();
+        readCacheOnly();
+        return Route.REPLICA;
+    }
+
+    // Соединение берётся при первом SQL транзакции, до того как прочитанные сущности попадут в кэш
+    private static void readCacheOnly() {
+        for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+            if (resource instanceof EntityManagerHolder holder) {
+                Session session = holder.getEntityManager().unwrap(Session.class);
+                CacheMode previous = session.getCacheMode();
+                session.setCacheMode(CacheMode.GET);
+                if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            if (session.isOpen()) {
+                                session.setCacheMode(previous);
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    // После коммита пишущей транзакции клиент какое-то время читает с основной БД
+    private void rememberWrite() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ReadYourWrites.markWrite(stickyWindow);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package library.controllers;
+
+import jakarta.persistence.EntityNotFoundException;
+import library.util.ResourceNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// Ошибки JSON API в формате application/problem+json; HTML-контроллеры обрабатывают ошибки сами
+@RestControllerAdvice(assignableTypes = {BooksApiController.class, PeopleApiController.class})
+@Slf4j
+public class ApiExceptionHandler {
+
+    @ExceptionHandler({ResourceNotFoundException.class, EntityNotFoundException.class})
+    public ProblemDetail notFound(RuntimeException e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.NOT_FOUND, e.getMessage());
+    }
+
+    // Книга уже выдана / не принадлежит читателю
+    @ExceptionHandler(IllegalStateException.class)
+    public ProblemDetail conflict(IllegalStateException e) {
+        log.warn("API: конфликт состояния: {}", e.getMessage());
+        return ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+    }
+
+    // Версия из If-Match устарела: клиент должен перечитать ресурс
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ProblemDetail preconditionFailed(OptimisticLockingFailureException e) {
+        log.warn("API: версия ресурса не совпала: {}", e.getMessage());
+        return ProblemDetail.forStatusAndDetail(HttpStatus.PRECONDITION_FAILED, e.getMessage());
+    }
+
+    // Некорректный курсор или If-Match
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ProblemDetail badRequest(IllegalArgumentException e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+}
@@ -0,0 +1,134 @@
+package library.controllers;
+
+import jakarta.validation.Valid;
+import library.dto.BookDetails;
+import library.dto.BookFacets;
+import library.dto.BookFilter;
+import library.dto.BookListItem;
+import library.dto.HoldResult;
+import library.models.Book;
+import library.services.BookHoldService;
+import library.services.BooksService;
+import library.util.EntityTags;
+import library.util.KeysetPage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+
+// JSON API каталога для киосков и мобильных клиентов. Ответы - компактные DTO, ETag - версия книги
+@RestController
+@RequestMapping("/api/v1/books")
+@RequiredArgsConstructor
+@Slf4j
+public class BooksApiController {
+    private final BooksService bookService;
+    private final BookHoldService bookHoldService;
+
+    public record LoanRequest(long personId) {
+    }
+
+    @GetMapping
+    public KeysetPage<BookListItem> list(@RequestParam(value = "after", required = false) String after,
+                                         @RequestParam(value = "before", required = false) String before,
+                                         @RequestParam(value = "size", required = false) Integer size,
+                                         @RequestParam(value = "sort_by_year", required = false) boolean sortByYear,
+                                         @RequestParam(value = "author", required = false) String author,
+                                         @RequestParam(value = "year_from", required = false) Integer yearFrom,
+                                         @RequestParam(value = "year_to", required = false) Integer yearTo,
+                                         @RequestParam(value = "available", required = false) boolean availableOnly) {
+        BookFilter filter = new BookFilter(author, yearFrom, yearTo, availableOnly);
+        log.debug("API: список книг after = {}, before = {}, size = {}, sortByYear = {}, фильтр: {}",
+                after, before, size, sortByYear, filter);
+        return bookService.findPage(after, before, size, sortByYear, filter);
+    }
+
+    @GetMapping("/facets")
+    public BookFacets facets(@RequestParam(value = "author", required = false) String author,
+                             @RequestParam(value = "year_from", required = false) Integer yearFrom,
+                             @RequestParam(value = "year_to", required = false) Integer yearTo,
+                             @RequestParam(value = "available", required = false) boolean availableOnly) {
+        BookFilter filter = new BookFilter(author, yearFrom, yearTo, availableOnly);
+        log.debug("API: счётчики фильтров каталога: {}", filter);
+        return bookService.facets(filter);
+    }
+
+    @GetMapping("/search")
+    public List<BookListItem> search(@RequestParam("q") String query) {
+        log.debug("API: поиск книг по запросу: {}", query);
+        return bookService.searchByName(query);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<BookDetails> show(@PathVariable("id") long id, WebRequest request) {
+        log.debug("API: книга с id: {}", id);
+        Book book = bookService.findOne(id);
+        if (EntityTags.checkNotModified(request, book.getVersion(), book.getUpdatedAt())) {
+            return null; // 304 без тела: версия у клиента актуальна
+        }
+        return ResponseEntity.ok(BookDetails.of(book));
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<BookDetails> update(@PathVariable("id") long id,
+                                              @RequestBody @Valid Book book,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.debug("API: обновление книги с id: {}, If-Match: {}", id, ifMatch);
+        return withETag(bookService.update(id, book, EntityTags.expectedVersion(ifMatch)));
+    }
+
+    @PostMapping("/{id}/assign")
+    public ResponseEntity<BookDetails> assign(@PathVariable("id") long id,
+                                              @RequestBody LoanRequest loan,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.debug("API: выдача книги с id: {} читателю с id: {}", id, loan.personId());
+        bookService.assign(id, loan.personId(), EntityTags.expectedVersion(ifMatch));
+        return withETag(bookService.findOne(id));
+    }
+
+    @PostMapping("/{id}/release")
+    public ResponseEntity<BookDetails> release(@PathVariable("id") long id,
+                                               @RequestBody LoanRequest loan,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.debug("API: возврат книги с id: {} читателем с id: {}", id, loan.personId());
+        bookService.release(id, loan.personId(), EntityTags.expectedVersion(ifMatch));
+        return withETag(bookService.findOne(id));
+    }
+
+    // Вместо повторных попыток выдачи занятой книги: читатель встаёт в очередь и получит книгу при возврате
+    @PostMapping("/{id}/holds")
+    public HoldResult placeHold(@PathVariable("id") long id, @RequestBody LoanRequest loan) {
+        log.debug("API: заявка на книгу с id: {} от читателя с id: {}", id, loan.personId());
+        return bookHoldService.placeHold(id, loan.personId());
+    }
+
+    // Место читателя в очереди; 404, если заявки нет (в том числе если книга ему уже передана)
+    @GetMapping("/{id}/holds/{personId}")
+    public ResponseEntity<HoldResult> holdPosition(@PathVariable("id") long id, @PathVariable("personId") long personId) {
+        int position = bookHoldService.position(id, personId);
+        if (position == 0) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(HoldResult.queued(id, personId, position));
+    }
+
+    @DeleteMapping("/{id}/holds/{personId}")
+    public ResponseEntity<Void> cancelHold(@PathVariable("id") long id, @PathVariable("personId") long personId) {
+        log.debug("API: снятие заявки на книгу с id: {} читателя с id: {}", id, personId);
+        return bookHoldService.cancelHold(id, personId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    private static ResponseEntity<BookDetails> withETag(Book book) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(EntityTags.of(book.getVersion()));
+        if (book.getUpdatedAt() != null) {
+            response.lastModified(book.getUpdatedAt());
+        }
+        return response.body(BookDetails.of(book));
+    }
+}
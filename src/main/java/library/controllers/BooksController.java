@@ -1,18 +1,35 @@
 package library.controllers;
 
 import jakarta.validation.Valid;
+import library.dto.BookFilter;
+import library.dto.BookListItem;
+import library.dto.BulkLoanResult;
+import library.dto.HoldResult;
 import library.models.Book;
 import library.models.Person;
+import library.services.AvailabilityFeed;
+import library.services.BookHoldService;
+import library.services.BookImportService;
 import library.services.BooksService;
-import library.services.PeopleService;
+import library.services.ExportService;
+import library.util.KeysetPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Optional;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 @Controller
 @RequestMapping("/book")
@@ -20,34 +37,86 @@ import java.util.Optional;
 @Slf4j
 public class BooksController {
     private final BooksService bookService;
-    private final PeopleService peopleService;
+    private final ExportService exportService;
+    private final BookImportService bookImportService;
+    private final AvailabilityFeed availabilityFeed;
+    private final BookHoldService bookHoldService;
 
     @GetMapping
     public String showAll(Model model,
                           @RequestParam(value = "page", required = false) Integer page,
                           @RequestParam(value = "books_per_page", required = false) Integer booksPerPage,
-                          @RequestParam(value = "sort_by_year", required = false) boolean sortByYear) {
+                          @RequestParam(value = "sort_by_year", required = false) boolean sortByYear,
+                          @RequestParam(value = "after", required = false) String after,
+                          @RequestParam(value = "before", required = false) String before,
+                          @RequestParam(value = "author", required = false) String author,
+                          @RequestParam(value = "year_from", required = false) Integer yearFrom,
+                          @RequestParam(value = "year_to", required = false) Integer yearTo,
+                          @RequestParam(value = "available", required = false) boolean availableOnly) {
 
-        log.debug("Запрос списка книг: page = {}, books_per_page = {}, sortByYear = {}", page, booksPerPage, sortByYear);
+        log.debug("Запрос списка книг: page = {}, books_per_page = {}, sortByYear = {}, after = {}, before = {}",
+                page, booksPerPage, sortByYear, after, before);
 
-        model.addAttribute("books", (page == null || booksPerPage == null)
-                ? bookService.findAll(sortByYear)
-                : bookService.findAll(page, booksPerPage, sortByYear));
+        model.addAttribute("sortByYear", sortByYear);
+        model.addAttribute("booksPerPage", booksPerPage);
+
+        // Старый постраничный режим с OFFSET оставлен для существующих ссылок с параметром page
+        if (page != null) {
+            model.addAttribute("books", bookService.findAll(page, booksPerPage == null ? 0 : booksPerPage, sortByYear));
+            return "bookShowAll";
+        }
+
+        BookFilter filter = new BookFilter(author, yearFrom, yearTo, availableOnly);
+        KeysetPage<BookListItem> booksPage;
+        try {
+            booksPage = bookService.findPage(after, before, booksPerPage, sortByYear, filter);
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный курсор списка книг, показываем первую страницу: {}", e.getMessage());
+            booksPage = bookService.findPage(null, null, booksPerPage, sortByYear, filter);
+        }
+        model.addAttribute("books", booksPage.items());
+        model.addAttribute("booksPage", booksPage);
+        model.addAttribute("filter", filter);
+        // Счётчики - GROUP BY по всему каталогу; на самой посещаемой странице без фильтров их не считаем
+        if (!filter.isEmpty()) {
+            model.addAttribute("facets", bookService.facets(filter));
+        }
 
         return "bookShowAll";
     }
 
+    // Изменения доступности книг (ids) или всего каталога; экраны выдачи подписываются вместо обновления страниц
+    @GetMapping(value = "/availability", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter availability(@RequestParam(value = "ids", required = false) List<Long> bookIds,
+                                   @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        log.debug("Подписка на изменения доступности книг: {}, Last-Event-ID {}", bookIds, lastEventId);
+        return availabilityFeed.subscribe(bookIds == null ? List.of() : bookIds, lastEventId);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(value = "format", defaultValue = "csv") String format) {
+        ExportService.Format exportFormat = ExportService.Format.of(format);
+        log.debug("Выгрузка каталога книг в формате {}", exportFormat);
+
+        StreamingResponseBody body = out -> exportService.exportBooks(exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"books." + exportFormat.name().toLowerCase() + "\"")
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     public String show(Model model, @PathVariable("id") int id, @ModelAttribute("person") Person person) {
         log.debug("Запрос информации о книге с id: {}", id);
 
-        model.addAttribute("book", bookService.findOne(id));
-        Optional<Person> bookOwner = Optional.ofNullable(bookService.getBookOwner(id));
-
-        bookOwner.ifPresentOrElse(
-                owner -> model.addAttribute("owner", owner),
-                () -> model.addAttribute("people", peopleService.findAll())
-        );
+        Book book = bookService.findOne(id);
+        model.addAttribute("book", book);
+        // Для свободной книги список читателей не загружается: страница запрашивает /people/lookup по мере ввода
+        if (book.getOwner() != null) {
+            model.addAttribute("owner", book.getOwner());
+            model.addAttribute("queueLength", bookHoldService.queueLength(id));
+        }
 
         return "bookShow";
     }
@@ -73,6 +142,22 @@ public class BooksController {
         return "redirect:/book";
     }
 
+    @GetMapping("/import")
+    public String importForm() {
+        log.debug("Открытие формы массового импорта книг");
+        return "bookImport";
+    }
+
+    @PostMapping("/import")
+    public String importBooks(Model model, @RequestParam("file") MultipartFile file) throws IOException {
+        log.debug("Массовый импорт книг из файла: {}, размер: {}", file.getOriginalFilename(), file.getSize());
+
+        try (InputStream in = file.getInputStream()) {
+            model.addAttribute("report", bookImportService.importCsv(in));
+        }
+        return "bookImport";
+    }
+
     @GetMapping("/{id}/edit")
     public String edit(Model model, @PathVariable("id") long id) {
         log.debug("Запрос на редактирование книги с id: {}", id);
@@ -124,6 +209,50 @@ public class BooksController {
         return "redirect:/book/" + id;
     }
 
+    // Заявка на книгу: свободная выдаётся сразу, выданная ставит читателя в очередь
+    @PostMapping("/{id}/hold")
+    public String hold(@PathVariable("id") long id, @ModelAttribute("person") Person selectedPerson) {
+        log.debug("Заявка на книгу с id: {} от пользователя с id: {}", id, selectedPerson.getId());
+        HoldResult result = bookHoldService.placeHold(id, selectedPerson.getId());
+        log.info("Заявка на книгу с id: {}: {}, место {}", id, result.status(), result.position());
+        return "redirect:/book/" + id;
+    }
+
+    // Групповая выдача: bookIds списком через запятую или повторяющимся параметром. Ответ - статус по каждой книге
+    @PostMapping(value = "/bulk/assign", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public BulkLoanResult assignAll(@RequestParam("bookIds") List<Long> bookIds, @RequestParam("personId") long personId) {
+        log.debug("Массовая выдача книг {} пользователю с id: {}", bookIds, personId);
+        return bookService.assignAll(bookIds, personId);
+    }
+
+    // Массовый возврат; без personId (ящик для возврата) освобождаются книги любого читателя
+    @PostMapping(value = "/bulk/release", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public BulkLoanResult releaseAll(@RequestParam("bookIds") List<Long> bookIds,
+                                     @RequestParam(value = "personId", required = false) Long personId) {
+        log.debug("Массовый возврат книг {}, пользователь с id: {}", bookIds, personId);
+        return bookService.releaseAll(bookIds, personId);
+    }
+
+    // Слишком большая пачка
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        log.warn("Некорректный запрос к книгам: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.parseMediaType("text/plain;charset=UTF-8"))
+                .body(e.getMessage());
+    }
+
+    // Книга уже выдана / не принадлежит читателю: конфликт состояния, а не ошибка сервера
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> conflict(IllegalStateException e) {
+        log.warn("Конфликт при работе с книгой: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .contentType(MediaType.parseMediaType("text/plain;charset=UTF-8"))
+                .body(e.getMessage());
+    }
+
     @GetMapping("/search")
     public String search() {
         log.debug("Открытие страницы поиска книг");
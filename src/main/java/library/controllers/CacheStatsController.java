@@ -0,0 +1,75 @@
+package library.controllers;
+
+import jakarta.persistence.EntityManagerFactory;
+import library.models.Book;
+import library.models.Person;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Статистика кэша второго уровня по регионам: попадания/промахи/записи от Hibernate, вытеснения от Caffeine (JCache JMX)
+@RestController
+@RequestMapping("/admin/cache-stats")
+@RequiredArgsConstructor
+@Slf4j
+public class CacheStatsController {
+    private static final List<String> REGIONS = List.of(
+            Book.class.getName(),
+            Person.class.getName(),
+            Person.class.getName() + ".books");
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public record RegionStats(long hits, long misses, long puts, long evictions, long size) {
+    }
+
+    @GetMapping
+    public Map<String, RegionStats> stats() {
+        log.debug("Запрос статистики кэша второго уровня");
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Map<String, RegionStats> result = new LinkedHashMap<>();
+        for (String region : REGIONS) {
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+            result.put(region, new RegionStats(
+                    regionStatistics.getHitCount(),
+                    regionStatistics.getMissCount(),
+                    regionStatistics.getPutCount(),
+                    evictions(region),
+                    regionStatistics.getElementCountInMemory()));
+        }
+        return result;
+    }
+
+    private static long evictions(String region) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = server.queryNames(new ObjectName("javax.cache:type=CacheStatistics,*"), null);
+            for (ObjectName name : names) {
+                String cache = name.getKeyProperty("Cache");
+                if (cache != null && cache.startsWith("\"")) {
+                    cache = ObjectName.unquote(cache);
+                }
+                if (region.equals(cache)) {
+                    return ((Number) server.getAttribute(name, "CacheEvictions")).longValue();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось получить число вытеснений для региона {}: {}", region, e.getMessage());
+        }
+        return -1;
+    }
+}
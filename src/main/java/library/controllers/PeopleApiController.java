@@ -0,0 +1,63 @@
+package library.controllers;
+
+import jakarta.validation.Valid;
+import library.dto.LoanedBookView;
+import library.dto.PersonDetails;
+import library.dto.PersonLookupResult;
+import library.models.Person;
+import library.services.PeopleService;
+import library.util.EntityTags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+
+// JSON API читателей; ETag карточки - версия читателя, выданные книги в неё не входят
+@RestController
+@RequestMapping("/api/v1/people")
+@RequiredArgsConstructor
+@Slf4j
+public class PeopleApiController {
+    private final PeopleService peopleService;
+
+    @GetMapping
+    public PersonLookupResult list(@RequestParam(value = "q", defaultValue = "") String query,
+                                   @RequestParam(value = "page", defaultValue = "0") int page,
+                                   @RequestParam(value = "size", defaultValue = "20") int size) {
+        log.debug("API: список читателей q = {}, page = {}, size = {}", query, page, size);
+        return peopleService.lookup(query, page, size);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<PersonDetails> show(@PathVariable("id") long id, WebRequest request) {
+        log.debug("API: читатель с id: {}", id);
+        Person person = peopleService.findOne(id);
+        if (EntityTags.checkNotModified(request, person.getVersion(), person.getUpdatedAt())) {
+            return null; // 304 без тела
+        }
+        return ResponseEntity.ok(PersonDetails.of(person));
+    }
+
+    @GetMapping("/{id}/books")
+    public List<LoanedBookView> books(@PathVariable("id") long id) {
+        log.debug("API: книги читателя с id: {}", id);
+        return peopleService.getBooksByPersonId(id);
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<PersonDetails> update(@PathVariable("id") long id,
+                                                @RequestBody @Valid Person person,
+                                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.debug("API: обновление читателя с id: {}, If-Match: {}", id, ifMatch);
+        Person updated = peopleService.update(id, person, EntityTags.expectedVersion(ifMatch));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(EntityTags.of(updated.getVersion()));
+        if (updated.getUpdatedAt() != null) {
+            response.lastModified(updated.getUpdatedAt());
+        }
+        return response.body(PersonDetails.of(updated));
+    }
+}
@@ -1,15 +1,27 @@
 package library.controllers;
 
 import jakarta.validation.Valid;
+import library.dto.OverdueLoanView;
+import library.dto.PersonLookupResult;
 import library.models.Person;
+import library.services.ExportService;
 import library.services.PeopleService;
+import library.util.KeysetPage;
 import library.validators.PersonValidator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
 
 @Controller
 @RequestMapping("/people")
@@ -17,11 +29,16 @@ import org.springframework.web.bind.annotation.*;
 public class PeopleController {
     private final PeopleService peopleService;
     private final PersonValidator personValidator;
+    private final ExportService exportService;
+
+    @Value("${library.people.inactive-after:730d}")
+    private Duration inactiveAfter;
 
     @Autowired
-    public PeopleController(PeopleService peopleService, PersonValidator personValidator) {
+    public PeopleController(PeopleService peopleService, PersonValidator personValidator, ExportService exportService) {
         this.peopleService = peopleService;
         this.personValidator = personValidator;
+        this.exportService = exportService;
     }
 
     @GetMapping
@@ -31,6 +48,54 @@ public class PeopleController {
         return "peopleShowAll";
     }
 
+    @GetMapping("/overdue")
+    public String overdue(Model model,
+                          @RequestParam(value = "after", required = false) String after,
+                          @RequestParam(value = "size", defaultValue = "50") int size) {
+        log.debug("Запрос списка просроченных выдач: after = {}, size = {}", after, size);
+        KeysetPage<OverdueLoanView> loansPage;
+        try {
+            loansPage = peopleService.findOverdue(after, size);
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный курсор просроченных выдач, показываем первую страницу: {}", e.getMessage());
+            loansPage = peopleService.findOverdue(null, size);
+        }
+        model.addAttribute("loansPage", loansPage);
+        model.addAttribute("size", size);
+        return "peopleOverdue";
+    }
+
+    @GetMapping(value = "/lookup", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public PersonLookupResult lookup(@RequestParam(value = "q", defaultValue = "") String query,
+                                     @RequestParam(value = "page", defaultValue = "0") int page,
+                                     @RequestParam(value = "size", defaultValue = "20") int size) {
+        log.debug("Подсказки по читателям: q = {}, page = {}, size = {}", query, page, size);
+        return peopleService.lookup(query, page, size);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(value = "format", defaultValue = "csv") String format) {
+        ExportService.Format exportFormat = ExportService.Format.of(format);
+        log.debug("Выгрузка читателей в формате {}", exportFormat);
+
+        StreamingResponseBody body = out -> exportService.exportPeople(exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"people." + exportFormat.name().toLowerCase() + "\"")
+                .body(body);
+    }
+
+    // Чистка неактивных читателей; срок можно переопределить параметром inactive_days
+    @PostMapping(value = "/purge", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public PeopleService.PurgeReport purge(@RequestParam(value = "inactive_days", required = false) Integer inactiveDays) {
+        Duration inactiveFor = inactiveDays == null ? inactiveAfter : Duration.ofDays(inactiveDays);
+        log.debug("Чистка неактивных читателей старше {}", inactiveFor);
+        return peopleService.purgeInactive(inactiveFor);
+    }
+
     @GetMapping("/{id}")
     public String show(@PathVariable("id") int id, Model model) {
         log.debug("Запрос информации о пользователе с id: {}", id);
@@ -90,4 +155,13 @@ public class PeopleController {
         log.info("Пользователь успешно удалён с id: {}", id);
         return "redirect:/people";
     }
+
+    // Неизвестный формат выгрузки
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        log.warn("Некорректный запрос к читателям: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.parseMediaType("text/plain;charset=UTF-8"))
+                .body(e.getMessage());
+    }
 }
@@ -0,0 +1,35 @@
+package library.controllers;
+
+import library.services.CirculationStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+// Панель статистики выдач; все значения берутся из CirculationStats без запросов к БД
+@Controller
+@RequestMapping("/stats")
+@RequiredArgsConstructor
+@Slf4j
+public class StatsController {
+    private final CirculationStats circulationStats;
+
+    @Value("${library.stats.top-size:100}")
+    private int topSize;
+
+    @GetMapping
+    public String dashboard(Model model,
+                            @RequestParam(value = "top", defaultValue = "20") int top,
+                            @RequestParam(value = "days", defaultValue = "14") int days) {
+        log.debug("Запрос панели статистики выдач: top = {}, days = {}", top, days);
+        int limit = Math.max(1, Math.min(top, topSize));
+        model.addAttribute("mostBorrowed", circulationStats.mostBorrowed(limit));
+        model.addAttribute("mostActiveReaders", circulationStats.mostActiveReaders(limit));
+        model.addAttribute("loansPerDay", circulationStats.loansPerDay(Math.max(1, Math.min(days, 366))));
+        return "statsDashboard";
+    }
+}
@@ -0,0 +1,17 @@
+package library.dto;
+
+import library.models.Book;
+
+import java.util.Date;
+
+// Карточка книги для JSON API: владелец - компактной ссылкой, версия совпадает с ETag
+public record BookDetails(long id, String title, String author, int yearOfRelease,
+                          PersonRef owner, Date takenAt, long version) {
+
+    public static BookDetails of(Book book) {
+        PersonRef owner = book.getOwner() == null ? null
+                : new PersonRef(book.getOwner().getId(), book.getOwner().getName());
+        return new BookDetails(book.getId(), book.getTitle(), book.getAuthor(), book.getYearOfRelease(),
+                owner, book.getTakenAt(), book.getVersion());
+    }
+}
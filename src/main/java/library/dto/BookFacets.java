@@ -0,0 +1,11 @@
+package library.dto;
+
+import java.util.SortedMap;
+
+/**
+ * Счётчики для панели фильтров каталога. total - книги, подходящие под все фильтры;
+ * available/taken не учитывают фильтр доступности, decades (начало десятилетия -> книги) не учитывают диапазон лет,
+ * чтобы было видно, сколько книг даст смена этого фильтра.
+ */
+public record BookFacets(long total, long available, long taken, SortedMap<Integer, Long> decades) {
+}
@@ -0,0 +1,26 @@
+package library.dto;
+
+// Фильтры каталога: автор (точное совпадение), диапазон лет выпуска включительно, только свободные книги.
+// Незаданные значения выборку не ограничивают
+public record BookFilter(String author, Integer yearFrom, Integer yearTo, boolean availableOnly) {
+    public static final BookFilter NONE = new BookFilter(null, null, null, false);
+
+    public BookFilter {
+        author = author == null || author.isBlank() ? null : author.trim();
+        if (yearFrom != null && yearTo != null && yearFrom > yearTo) {
+            throw new IllegalArgumentException("Начало диапазона лет " + yearFrom + " больше конца " + yearTo);
+        }
+    }
+
+    public boolean isEmpty() {
+        return author == null && yearFrom == null && yearTo == null && !availableOnly;
+    }
+
+    public boolean matchesYear(int year) {
+        return (yearFrom == null || year >= yearFrom) && (yearTo == null || year <= yearTo);
+    }
+
+    public boolean matchesAvailability(boolean available) {
+        return !availableOnly || available;
+    }
+}
@@ -0,0 +1,14 @@
+package library.dto;
+
+// Строка списка книг: только то, что показывают списки и поиск, плюс имя владельца из JOIN
+public interface BookListItem {
+    long getId();
+
+    String getTitle();
+
+    String getAuthor();
+
+    int getYearOfRelease();
+
+    String getOwnerName();
+}
@@ -0,0 +1,30 @@
+package library.dto;
+
+// Строка списка книг из динамического запроса фильтрации (см. BookFilterRepositoryImpl)
+public record BookListRow(long id, String title, String author, int yearOfRelease, String ownerName) implements BookListItem {
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public String getAuthor() {
+        return author;
+    }
+
+    @Override
+    public int getYearOfRelease() {
+        return yearOfRelease;
+    }
+
+    @Override
+    public String getOwnerName() {
+        return ownerName;
+    }
+}
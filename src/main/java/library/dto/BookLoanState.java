@@ -0,0 +1,8 @@
+package library.dto;
+
+// Текущий владелец книги, прочитанный с блокировкой строки перед массовой выдачей/возвратом
+public interface BookLoanState {
+    long getId();
+
+    Long getPersonId();
+}
@@ -0,0 +1,22 @@
+package library.dto;
+
+import java.util.List;
+
+// Итог массовой выдачи или возврата: статус по каждой книге в порядке запроса
+public record BulkLoanResult(List<Item> items) {
+
+    public enum Status {
+        OK, CONFLICT, NOT_FOUND
+    }
+
+    public record Item(long bookId, Status status, String message) {
+    }
+
+    public long succeeded() {
+        return items.stream().filter(item -> item.status() == Status.OK).count();
+    }
+
+    public long failed() {
+        return items.size() - succeeded();
+    }
+}
@@ -0,0 +1,17 @@
+package library.dto;
+
+// Итог заявки на книгу: книга выдана сразу (свободна) или читатель встал в очередь на место position (с 1)
+public record HoldResult(long bookId, long personId, Status status, int position) {
+
+    public enum Status {
+        ASSIGNED, QUEUED
+    }
+
+    public static HoldResult assigned(long bookId, long personId) {
+        return new HoldResult(bookId, personId, Status.ASSIGNED, 0);
+    }
+
+    public static HoldResult queued(long bookId, long personId, int position) {
+        return new HoldResult(bookId, personId, Status.QUEUED, position);
+    }
+}
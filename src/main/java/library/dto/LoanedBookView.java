@@ -0,0 +1,18 @@
+package library.dto;
+
+import java.util.Date;
+
+// Книга на руках у читателя; признак просрочки вычисляется в запросе
+public interface LoanedBookView {
+    long getId();
+
+    String getTitle();
+
+    String getAuthor();
+
+    int getYearOfRelease();
+
+    Date getTakenAt();
+
+    boolean isOverdue();
+}
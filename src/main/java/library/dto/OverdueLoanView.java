@@ -0,0 +1,18 @@
+package library.dto;
+
+import java.util.Date;
+
+// Строка общего списка просроченных выдач
+public interface OverdueLoanView {
+    long getBookId();
+
+    String getTitle();
+
+    String getAuthor();
+
+    Date getTakenAt();
+
+    long getPersonId();
+
+    String getPersonName();
+}
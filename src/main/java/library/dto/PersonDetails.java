@@ -0,0 +1,11 @@
+package library.dto;
+
+import library.models.Person;
+
+// Карточка читателя для JSON API без коллекции книг (книги - отдельным запросом)
+public record PersonDetails(long id, String name, int yearOfBirth, long version) {
+
+    public static PersonDetails of(Person person) {
+        return new PersonDetails(person.getId(), person.getName(), person.getYearOfBirth(), person.getVersion());
+    }
+}
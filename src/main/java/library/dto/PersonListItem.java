@@ -0,0 +1,10 @@
+package library.dto;
+
+// Строка списка читателей без коллекции книг
+public interface PersonListItem {
+    long getId();
+
+    String getName();
+
+    int getYearOfBirth();
+}
@@ -0,0 +1,7 @@
+package library.dto;
+
+import java.util.List;
+
+// Страница подсказок по читателям: элементы и признак наличия следующей страницы
+public record PersonLookupResult(List<PersonRef> items, int page, boolean hasNext) {
+}
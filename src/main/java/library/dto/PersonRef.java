@@ -0,0 +1,5 @@
+package library.dto;
+
+// Компактная ссылка на читателя для JSON-подсказок
+public record PersonRef(long id, String name) {
+}
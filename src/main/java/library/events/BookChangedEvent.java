@@ -0,0 +1,13 @@
+package library.events;
+
+// Событие создания, изменения или удаления книги; публикуется из BooksService
+public record BookChangedEvent(long bookId, String title, String author, boolean deleted) {
+
+    public static BookChangedEvent saved(long bookId, String title, String author) {
+        return new BookChangedEvent(bookId, title, author, false);
+    }
+
+    public static BookChangedEvent deleted(long bookId) {
+        return new BookChangedEvent(bookId, null, null, true);
+    }
+}
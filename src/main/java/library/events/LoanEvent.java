@@ -0,0 +1,20 @@
+package library.events;
+
+import java.util.Date;
+
+// Событие выдачи или возврата книги; публикуется из BooksService после успешного UPDATE
+public record LoanEvent(Type type, long bookId, long personId, Date occurredAt) {
+
+    public enum Type {
+        CHECKOUT,
+        RETURN
+    }
+
+    public static LoanEvent checkout(long bookId, long personId) {
+        return new LoanEvent(Type.CHECKOUT, bookId, personId, new Date());
+    }
+
+    public static LoanEvent returned(long bookId, long personId) {
+        return new LoanEvent(Type.RETURN, bookId, personId, new Date());
+    }
+}
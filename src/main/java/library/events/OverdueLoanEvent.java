@@ -0,0 +1,14 @@
+package library.events;
+
+import library.dto.OverdueLoanView;
+
+import java.util.Date;
+
+// Выдача впервые отмечена как просроченная; публикуется из OverdueScanner, доставка напоминаний подписывается на него
+public record OverdueLoanEvent(long bookId, String title, String author, long personId, String personName, Date takenAt) {
+
+    public static OverdueLoanEvent of(OverdueLoanView loan) {
+        return new OverdueLoanEvent(loan.getBookId(), loan.getTitle(), loan.getAuthor(),
+                loan.getPersonId(), loan.getPersonName(), loan.getTakenAt());
+    }
+}
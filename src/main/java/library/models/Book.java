@@ -6,26 +6,34 @@ import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Size;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.UpdateTimestamp;
 
+import java.time.Instant;
 import java.util.Date;
 import java.util.Objects;
 
 @Entity
 @Table(name = "book")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
 @Setter
 public class Book {
+    // Последовательность с pooled-оптимизатором: один nextval на 50 книг, и Hibernate может группировать INSERT в batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private long id;
 
     @NotEmpty(message = "Название не должно быть пустым")
     @Size(min = 2, max = 30, message = "Название должно быть от 2 до 30 символов")
     private String title;
 
-    @NotEmpty(message = "Год выпуска не может быть пустым")
+    @Min(value = 1000, message = "Год выпуска не должен быть менее 1000")
     @Max(value = 2024, message = "Год выпуска не должен быть более 2024") // Текущий год
     private int yearOfRelease;
 
@@ -33,7 +41,7 @@ public class Book {
     @Size(min = 2, max = 100, message = "Имя автора должно быть от 2 до 100 символов")
     private String author;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "person_id")
     private Person owner;
 
@@ -43,6 +51,24 @@ public class Book {
     @Transient
     private boolean overdue;
 
+    // Когда фоновый поиск просрочек (OverdueScanner) отметил выдачу; сбрасывается выдачей и возвратом.
+    // Пишется только нативными UPDATE в BooksRepositories, поэтому из сущности не сохраняется
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "overdue_notified_at", insertable = false, updatable = false)
+    private Date overdueNotifiedAt;
+
+    // Версия для оптимистической блокировки и ETag в API; условные UPDATE в BooksRepositories увеличивают её сами.
+    // В рабочей базе колонку добавляет миграция V2; DEFAULT 0 здесь - для схемы, которую создаёт сам Hibernate
+    // (профиль bench, ddl-auto: create): тестовые данные вставляются SQL без version
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private long version;
+
+    // Время последнего изменения для Last-Modified; у строк, созданных до появления колонки, пусто
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
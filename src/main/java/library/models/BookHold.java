@@ -0,0 +1,39 @@
+package library.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.Date;
+
+/**
+ * Заявка читателя на выданную книгу. Очередь книги - её заявки в порядке id: при возврате
+ * книга достаётся владельцу первой заявки (см. BookHoldService). Одна заявка читателя на книгу.
+ */
+@Entity
+@Table(name = "book_hold",
+        uniqueConstraints = @UniqueConstraint(name = "uk_book_hold_book_person", columnNames = {"book_id", "person_id"}))
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BookHold {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "person_id", nullable = false)
+    private Long personId;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "placed_at", nullable = false)
+    private Date placedAt;
+
+    public BookHold(Long bookId, Long personId, Date placedAt) {
+        this.bookId = bookId;
+        this.personId = personId;
+        this.placedAt = placedAt;
+    }
+}
@@ -0,0 +1,42 @@
+package library.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.Date;
+
+/**
+ * Событие выдачи или возврата, которое LoanHistoryWriter не смог записать в book_loans:
+ * БД отвергла именно его. Хранится для ручного разбора и повторной записи.
+ */
+@Entity
+@Table(name = "book_loans_dead_letter")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BookLoanDeadLetter {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "event_type", nullable = false, length = 16)
+    private String eventType;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "person_id", nullable = false)
+    private Long personId;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "occurred_at", nullable = false)
+    private Date occurredAt;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "failed_at", nullable = false)
+    private Date failedAt;
+}
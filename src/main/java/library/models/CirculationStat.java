@@ -0,0 +1,44 @@
+package library.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * Контрольная точка статистики выдач (см. CirculationStats): одно значение счётчика на (вид, ключ).
+ * Ключ - id книги, id читателя или день в виде yyyymmdd.
+ */
+@Entity
+@Table(name = "circulation_stats")
+@IdClass(CirculationStat.Key.class)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class CirculationStat {
+
+    public enum Kind {
+        BOOK_LOANS, ACTIVE_LOANS, DAY_LOANS
+    }
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", length = 16)
+    private Kind kind;
+
+    @Id
+    @Column(name = "stat_key")
+    private long statKey;
+
+    @Column(name = "total", nullable = false)
+    private long total;
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Kind kind;
+        private long statKey;
+    }
+}
@@ -0,0 +1,41 @@
+package library.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Аренда части фоновой задачи (см. OverdueScanner): кто её сейчас выполняет и до какого времени,
+ * какой запуск и докуда он дошёл. Экземпляры приложения захватывают строки условным UPDATE.
+ */
+@Entity
+@Table(name = "job_lease")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class JobLease {
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    // Экземпляр приложения, который держит аренду; пусто, если часть свободна
+    @Column(name = "lease_owner", length = 128)
+    private String leaseOwner;
+
+    // Моменты по часам БД (CURRENT_TIMESTAMP), с часовым поясом
+    @Column(name = "lease_until")
+    private Instant leaseUntil;
+
+    // Запуск, к которому относятся курсор и отметка о завершении
+    @Column(name = "run_id", nullable = false)
+    private long runId;
+
+    // Последний обработанный id: с него продолжается прерванный запуск
+    @Column(name = "cursor_id", nullable = false)
+    private long cursorId;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+}
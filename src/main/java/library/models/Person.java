@@ -5,10 +5,17 @@ import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
 import java.util.List;
 
 @Entity
 @Table(name = "person")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
@@ -23,7 +30,6 @@ public class Person {
     @NotEmpty(message = "Имя пользователя не может быть пустым")
     private String name;
 
-    @NotEmpty(message = "Год рождения пользователя не может быть пустым")
     @Min(value = 1900, message = "Год рождения не должен быть меньше 1900")
     @Max(value = 2010, message = "Год рождения не должен превышать 2010")
     // Условие - клиенты библиотеки должны быть старше 14 лет (2010 год рождения)
@@ -31,13 +37,14 @@ public class Person {
     private int yearOfBirth;
 
     @OneToMany(mappedBy = "owner", fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Book> books;
 
-    public void releaseBooks() {
-        if (books != null) {
-            for (Book book : books) {
-                book.setOwner(null); // Освобождаем книги
-            }
-        }
-    }
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private long version;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
 }
\ No newline at end of file
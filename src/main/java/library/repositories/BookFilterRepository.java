@@ -0,0 +1,18 @@
+package library.repositories;
+
+import library.dto.BookFacets;
+import library.dto.BookFilter;
+import library.dto.BookListItem;
+import library.util.BookCursor;
+
+import java.util.List;
+
+// Фильтрация каталога; реализация - BookFilterRepositoryImpl, подключается к BooksRepositories
+public interface BookFilterRepository {
+
+    // Страница книг после курсора (forward) или перед ним в обратном порядке, как findPageAfter*/findPageBefore*
+    List<BookListItem> findFilteredPage(BookFilter filter, BookCursor cursor, boolean forward, int limit);
+
+    // Все счётчики фильтров одним агрегирующим запросом
+    BookFacets countFacets(BookFilter filter);
+}
@@ -0,0 +1,113 @@
+package library.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import library.dto.BookFacets;
+import library.dto.BookFilter;
+import library.dto.BookListItem;
+import library.dto.BookListRow;
+import library.util.BookCursor;
+import lombok.RequiredArgsConstructor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * SQL собирается только из заданных фильтров: планировщик видит конкретные условия и берёт подходящий индекс
+ * (idx_book_author_year_id, idx_book_available_year_id), а не общий план для "параметр IS NULL OR ...".
+ */
+@RequiredArgsConstructor
+public class BookFilterRepositoryImpl implements BookFilterRepository {
+    private final EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<BookListItem> findFilteredPage(BookFilter filter, BookCursor cursor, boolean forward, int limit) {
+        Map<String, Object> params = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT b.id, b.title, b.author, b.year_of_release, p.name " +
+                "FROM book b LEFT JOIN person p ON p.id = b.person_id WHERE 1 = 1");
+        appendFilter(sql, params, filter);
+
+        String comparison = forward ? " > " : " < ";
+        String direction = forward ? "" : " DESC";
+        if (cursor.sortByYear()) {
+            sql.append(" AND (b.year_of_release, b.id)").append(comparison).append("(:cursorYear, :cursorId)")
+                    .append(" ORDER BY b.year_of_release").append(direction).append(", b.id").append(direction);
+            params.put("cursorYear", cursor.yearOfRelease());
+        } else {
+            sql.append(" AND b.id").append(comparison).append(":cursorId ORDER BY b.id").append(direction);
+        }
+        params.put("cursorId", cursor.id());
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        params.forEach(query::setParameter);
+        query.setMaxResults(limit);
+        List<Object[]> rows = query.getResultList();
+        return rows.stream()
+                .map(row -> (BookListItem) new BookListRow(((Number) row[0]).longValue(), (String) row[1],
+                        (String) row[2], ((Number) row[3]).intValue(), (String) row[4]))
+                .toList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public BookFacets countFacets(BookFilter filter) {
+        // Группы (год, свободна ли книга) по книгам автора: их не больше, чем лет в каталоге, дважды.
+        // Остальные фильтры применяются к группам в памяти, так что каждый счётчик может не учитывать свой фильтр
+        Map<String, Object> params = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT b.year_of_release, " +
+                "CASE WHEN b.person_id IS NULL THEN 1 ELSE 0 END, COUNT(*) FROM book b WHERE 1 = 1");
+        appendFilter(sql, params, new BookFilter(filter.author(), null, null, false));
+        sql.append(" GROUP BY b.year_of_release, CASE WHEN b.person_id IS NULL THEN 1 ELSE 0 END");
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        params.forEach(query::setParameter);
+        List<Object[]> groups = query.getResultList();
+
+        long total = 0;
+        long available = 0;
+        long taken = 0;
+        SortedMap<Integer, Long> decades = new TreeMap<>();
+        for (Object[] group : groups) {
+            int year = ((Number) group[0]).intValue();
+            boolean free = ((Number) group[1]).intValue() == 1;
+            long count = ((Number) group[2]).longValue();
+
+            if (filter.matchesYear(year)) {
+                if (free) {
+                    available += count;
+                } else {
+                    taken += count;
+                }
+            }
+            if (filter.matchesAvailability(free)) {
+                decades.merge(year / 10 * 10, count, Long::sum);
+                if (filter.matchesYear(year)) {
+                    total += count;
+                }
+            }
+        }
+        return new BookFacets(total, available, taken, decades);
+    }
+
+    private static void appendFilter(StringBuilder sql, Map<String, Object> params, BookFilter filter) {
+        if (filter.author() != null) {
+            sql.append(" AND b.author = :author");
+            params.put("author", filter.author());
+        }
+        if (filter.yearFrom() != null) {
+            sql.append(" AND b.year_of_release >= :yearFrom");
+            params.put("yearFrom", filter.yearFrom());
+        }
+        if (filter.yearTo() != null) {
+            sql.append(" AND b.year_of_release <= :yearTo");
+            params.put("yearTo", filter.yearTo());
+        }
+        if (filter.availableOnly()) {
+            sql.append(" AND b.person_id IS NULL");
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package library.repositories;
+
+import library.models.BookHold;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BookHoldRepository extends JpaRepository<BookHold, Long> {
+
+    Optional<BookHold> findByBookIdAndPersonId(long bookId, long personId);
+
+    // Место заявки в очереди: сколько заявок книги подано раньше неё
+    long countByBookIdAndIdLessThan(long bookId, long id);
+
+    long countByBookId(long bookId);
+
+    Optional<BookHold> findFirstByBookIdOrderByIdAsc(long bookId);
+
+    // Первые заявки очередей сразу для пачки освобождённых книг (индекс idx_book_hold_book_id)
+    @Query("SELECT h FROM BookHold h WHERE h.bookId IN :bookIds " +
+            "AND h.id = (SELECT MIN(f.id) FROM BookHold f WHERE f.bookId = h.bookId)")
+    List<BookHold> findHeadsByBookIdIn(@Param("bookIds") Collection<Long> bookIds);
+
+    @Query("SELECT h.bookId FROM BookHold h WHERE h.personId = :personId")
+    List<Long> findBookIdsByPersonId(@Param("personId") long personId);
+
+    // Удаление по id с числом удалённых строк: 0 означает, что заявку уже сняли параллельно
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM BookHold h WHERE h.id = :id")
+    int deleteHold(@Param("id") long id);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM BookHold h WHERE h.bookId = :bookId AND h.personId = :personId")
+    int deleteByBookIdAndPersonId(@Param("bookId") long bookId, @Param("personId") long personId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM BookHold h WHERE h.personId = :personId")
+    int deleteByPersonId(@Param("personId") long personId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM BookHold h WHERE h.bookId = :bookId")
+    int deleteByBookId(@Param("bookId") long bookId);
+}
@@ -2,12 +2,175 @@ package library.repositories;
 
 // todo нет форматирования -> в IDE есть автоформатирования, можно его юзать
 
+import jakarta.persistence.QueryHint;
+import library.dto.BookListItem;
+import library.dto.BookLoanState;
+import library.dto.LoanedBookView;
+import library.dto.OverdueLoanView;
 import library.models.Book;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface BooksRepositories extends JpaRepository<Book, Long> {
+public interface BooksRepositories extends JpaRepository<Book, Long>, BookFilterRepository {
+    // Размер пачки строк, которую драйвер забирает из серверного курсора при выгрузке
+    int EXPORT_FETCH_SIZE = 1000;
+
+    // Значение expectedVersion для условных UPDATE без проверки версии
+    long ANY_VERSION = -1;
+
+    // Пространство запросов нативных UPDATE выдачи и возврата. Оно не совпадает ни с одной таблицей сущностей,
+    // поэтому Hibernate не сбрасывает регионы Book и Person.books целиком: изменённые записи
+    // сбрасывает вызывающий сервис через BookCacheEvictor
+    String CIRCULATION_SPACE = "book_circulation";
+
     List<Book> findByTitleStartingWith(String title);
-}
\ No newline at end of file
+
+    // Условная выдача одним UPDATE: возвращает 1, если книга была свободна (и её версия совпала с ожидаемой), иначе 0.
+    // Кэш второго уровня для этой книги и её владельца сбрасывает вызывающий код (см. CIRCULATION_SPACE).
+    // Версию увеличиваем здесь же: Hibernate не видит нативных изменений
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = CIRCULATION_SPACE))
+    @Query(value = "UPDATE book SET person_id = :personId, taken_at = :takenAt, " +
+            "overdue_notified_at = NULL, version = version + 1, updated_at = :takenAt " +
+            "WHERE id = :bookId AND person_id IS NULL " +
+            "AND (:expectedVersion < 0 OR version = :expectedVersion)", nativeQuery = true)
+    int assignIfFree(@Param("bookId") long bookId, @Param("personId") long personId, @Param("takenAt") Date takenAt,
+                     @Param("expectedVersion") long expectedVersion);
+
+    // Условный возврат: освобождает книгу, только если она числится за указанным читателем
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = CIRCULATION_SPACE))
+    @Query(value = "UPDATE book SET person_id = NULL, taken_at = NULL, " +
+            "overdue_notified_at = NULL, version = version + 1, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE id = :bookId AND person_id = :personId " +
+            "AND (:expectedVersion < 0 OR version = :expectedVersion)", nativeQuery = true)
+    int releaseIfOwnedBy(@Param("bookId") long bookId, @Param("personId") long personId,
+                         @Param("expectedVersion") long expectedVersion);
+
+    // Массовая выдача/возврат: строки блокируются в порядке id (без взаимоблокировок между пачками),
+    // затем меняются одним UPDATE на всю пачку, сколько бы книг в ней ни было
+    @Query(value = "SELECT b.id AS \"id\", b.person_id AS \"personId\" FROM book b " +
+            "WHERE b.id IN (:ids) ORDER BY b.id FOR UPDATE", nativeQuery = true)
+    List<BookLoanState> lockLoanStates(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = CIRCULATION_SPACE))
+    @Query(value = "UPDATE book SET person_id = :personId, taken_at = :takenAt, " +
+            "overdue_notified_at = NULL, version = version + 1, updated_at = :takenAt " +
+            "WHERE id IN (:ids) AND person_id IS NULL", nativeQuery = true)
+    int assignAllIfFree(@Param("ids") Collection<Long> ids, @Param("personId") long personId, @Param("takenAt") Date takenAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = CIRCULATION_SPACE))
+    @Query(value = "UPDATE book SET person_id = NULL, taken_at = NULL, " +
+            "overdue_notified_at = NULL, version = version + 1, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE id IN (:ids) AND person_id IS NOT NULL", nativeQuery = true)
+    int releaseAll(@Param("ids") Collection<Long> ids);
+
+    // Книги читателя с блокировкой строк в порядке id (перед удалением читателя); освобождаются затем releaseAll
+    @Query(value = "SELECT b.id FROM book b WHERE b.person_id = :personId ORDER BY b.id FOR UPDATE", nativeQuery = true)
+    List<Long> lockIdsByOwnerId(@Param("personId") long personId);
+
+    // Списки и поиск читают проекции: владелец подтягивается тем же запросом, сущности не попадают в контекст
+    String LIST_ITEM_COLUMNS = "b.id AS \"id\", b.title AS \"title\", b.author AS \"author\", " +
+            "b.year_of_release AS \"yearOfRelease\", p.name AS \"ownerName\" " +
+            "FROM book b LEFT JOIN person p ON p.id = b.person_id ";
+
+    // Keyset-пагинация: строки после/до ключа курсора, без OFFSET. Индекс: idx_book_year_id
+    @Query(value = "SELECT " + LIST_ITEM_COLUMNS + "WHERE b.id > :id ORDER BY b.id LIMIT :limit", nativeQuery = true)
+    List<BookListItem> findPageAfterId(@Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = "SELECT " + LIST_ITEM_COLUMNS + "WHERE b.id < :id ORDER BY b.id DESC LIMIT :limit", nativeQuery = true)
+    List<BookListItem> findPageBeforeId(@Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = "SELECT " + LIST_ITEM_COLUMNS + "WHERE (b.year_of_release, b.id) > (:year, :id) " +
+            "ORDER BY b.year_of_release, b.id LIMIT :limit", nativeQuery = true)
+    List<BookListItem> findPageAfterYear(@Param("year") int year, @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = "SELECT " + LIST_ITEM_COLUMNS + "WHERE (b.year_of_release, b.id) < (:year, :id) " +
+            "ORDER BY b.year_of_release DESC, b.id DESC LIMIT :limit", nativeQuery = true)
+    List<BookListItem> findPageBeforeYear(@Param("year") int year, @Param("id") long id, @Param("limit") int limit);
+
+    // Страница со смещением для старых ссылок ?page=; Slice не делает лишний COUNT
+    @Query("SELECT b.id AS id, b.title AS title, b.author AS author, b.yearOfRelease AS yearOfRelease, " +
+            "o.name AS ownerName FROM Book b LEFT JOIN b.owner o")
+    Slice<BookListItem> findListItems(Pageable pageable);
+
+    @Query("SELECT b.id AS id, b.title AS title, b.author AS author, b.yearOfRelease AS yearOfRelease, " +
+            "o.name AS ownerName FROM Book b LEFT JOIN b.owner o WHERE b.id IN :ids")
+    List<BookListItem> findListItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT b.id AS id, b.title AS title, b.author AS author, b.yearOfRelease AS yearOfRelease, " +
+            "o.name AS ownerName FROM Book b LEFT JOIN b.owner o WHERE b.title LIKE CONCAT(:prefix, '%')")
+    List<BookListItem> findListItemsByTitleStartingWith(@Param("prefix") String prefix);
+
+    // Книги читателя; просрочка считается в БД относительно переданного порога
+    @Query("SELECT b.id AS id, b.title AS title, b.author AS author, b.yearOfRelease AS yearOfRelease, " +
+            "b.takenAt AS takenAt, CASE WHEN b.takenAt < :threshold THEN true ELSE false END AS overdue " +
+            "FROM Book b WHERE b.owner.id = :personId ORDER BY b.takenAt, b.id")
+    List<LoanedBookView> findLoansByPersonId(@Param("personId") long personId, @Param("threshold") Date threshold);
+
+    // Общий список просроченных выдач keyset-страницами по (taken_at, id). Индекс: idx_book_taken_at_loaned
+    String OVERDUE_COLUMNS = "b.id AS \"bookId\", b.title AS \"title\", b.author AS \"author\", " +
+            "b.taken_at AS \"takenAt\", p.id AS \"personId\", p.name AS \"personName\" " +
+            "FROM book b JOIN person p ON p.id = b.person_id " +
+            "WHERE b.person_id IS NOT NULL AND b.taken_at < :threshold ";
+
+    @Query(value = "SELECT " + OVERDUE_COLUMNS + "ORDER BY b.taken_at, b.id LIMIT :limit", nativeQuery = true)
+    List<OverdueLoanView> findOverdueFirstPage(@Param("threshold") Date threshold, @Param("limit") int limit);
+
+    @Query(value = "SELECT " + OVERDUE_COLUMNS + "AND (b.taken_at, b.id) > (:afterTakenAt, :afterId) " +
+            "ORDER BY b.taken_at, b.id LIMIT :limit", nativeQuery = true)
+    List<OverdueLoanView> findOverdueAfter(@Param("threshold") Date threshold,
+                                           @Param("afterTakenAt") Date afterTakenAt,
+                                           @Param("afterId") long afterId,
+                                           @Param("limit") int limit);
+
+    // Фоновый поиск просрочек: ещё не отмеченные выдачи одной части каталога (id % partitions) keyset-пачками по id.
+    // Индекс: idx_book_overdue_unflagged
+    @Query(value = "SELECT " + OVERDUE_COLUMNS + "AND b.overdue_notified_at IS NULL AND b.id > :afterId " +
+            "AND MOD(b.id, :partitions) = :partition ORDER BY b.id LIMIT :limit", nativeQuery = true)
+    List<OverdueLoanView> findUnflaggedOverdue(@Param("threshold") Date threshold,
+                                               @Param("afterId") long afterId,
+                                               @Param("partitions") int partitions,
+                                               @Param("partition") int partition,
+                                               @Param("limit") int limit);
+
+    // Отметка просрочки с повторной проверкой условий: книгу могли вернуть после выборки.
+    // Версию не увеличивает - отметка не меняет данных, которые видит клиент API
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = CIRCULATION_SPACE))
+    @Query(value = "UPDATE book SET overdue_notified_at = :flaggedAt " +
+            "WHERE id IN (:ids) AND person_id IS NOT NULL AND overdue_notified_at IS NULL " +
+            "AND taken_at < :threshold", nativeQuery = true)
+    int flagOverdue(@Param("ids") Collection<Long> ids, @Param("threshold") Date threshold,
+                    @Param("flaggedAt") Date flaggedAt);
+
+    @Query(value = "SELECT id FROM book WHERE id IN (:ids) AND overdue_notified_at = :flaggedAt", nativeQuery = true)
+    List<Long> findIdsFlaggedAt(@Param("ids") Collection<Long> ids, @Param("flaggedAt") Date flaggedAt);
+
+    // Потоковое чтение всего каталога для выгрузки: курсор на стороне сервера, владелец подгружается тем же запросом.
+    // Работает только внутри транзакции; вызывающий код обязан закрыть Stream
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false"),
+            // Выгрузка всего каталога не должна вытеснять из кэша второго уровня часто читаемые записи
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("SELECT b FROM Book b LEFT JOIN FETCH b.owner ORDER BY b.id")
+    Stream<Book> streamAllWithOwner();
+}
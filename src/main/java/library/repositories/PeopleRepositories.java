@@ -1,10 +1,76 @@
 package library.repositories;
 
+import jakarta.persistence.QueryHint;
+import library.dto.PersonListItem;
+import library.dto.PersonRef;
 import library.models.Person;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface PeopleRepositories extends JpaRepository<Person, Long> {
     Person findByName(String name);
+
+    // Блокирует строку читателя до конца транзакции. Выдача ему книги или заявка от него в другой транзакции
+    // (проверка внешнего ключа book.person_id / book_hold.person_id) ждёт снятия этой блокировки
+    @Query(value = "SELECT p.id FROM person p WHERE p.id = :id FOR UPDATE", nativeQuery = true)
+    List<Long> lockById(@Param("id") long id);
+
+    // То же для пачки читателей, в порядке id: две чистки не заблокируют друг друга крест-накрест
+    @Query(value = "SELECT p.id FROM person p WHERE p.id IN (:ids) ORDER BY p.id FOR UPDATE", nativeQuery = true)
+    List<Long> lockAllByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.id AS id, p.name AS name, p.yearOfBirth AS yearOfBirth FROM Person p ORDER BY p.id")
+    List<PersonListItem> findListItems();
+
+    @Query("SELECT p.id AS id, p.name AS name, p.yearOfBirth AS yearOfBirth FROM Person p WHERE p.id IN :ids")
+    List<PersonListItem> findListItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Подсказки по началу имени без учёта регистра. Индекс: idx_person_name_lower (lower(name) text_pattern_ops)
+    @Query("SELECT new library.dto.PersonRef(p.id, p.name) FROM Person p " +
+            "WHERE LOWER(p.name) LIKE CONCAT(LOWER(:prefix), '%') ESCAPE '\\' ORDER BY LOWER(p.name), p.id")
+    Slice<PersonRef> findRefsByNamePrefix(@Param("prefix") String prefix, Pageable pageable);
+
+    // Неактивные читатели keyset-страницами по id: без книг на руках и заявок, не менялись и ничего не брали с cutoff.
+    // Индексы: idx_book_person_id, idx_book_loans_person_dates
+    @Query(value = "SELECT p.id FROM person p " +
+            "WHERE p.id > :afterId AND (p.updated_at IS NULL OR p.updated_at < :cutoff) " +
+            "AND NOT EXISTS (SELECT 1 FROM book b WHERE b.person_id = p.id) " +
+            "AND NOT EXISTS (SELECT 1 FROM book_hold h WHERE h.person_id = p.id) " +
+            "AND NOT EXISTS (SELECT 1 FROM book_loans l WHERE l.person_id = p.id " +
+            "AND (l.loan_date >= :cutoff OR l.return_date >= :cutoff)) " +
+            "ORDER BY p.id LIMIT :limit", nativeQuery = true)
+    List<Long> findInactiveIds(@Param("afterId") long afterId, @Param("cutoff") Date cutoff, @Param("limit") int limit);
+
+    // Удаление пачки; книга, выданная (или заявка, поданная) после выборки кандидатов, оставляет читателя на месте.
+    // Вызывать после lockAllByIdIn: иначе незакоммиченная заявка не видна NOT EXISTS и уходит каскадом вместе с читателем
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "person"))
+    @Query(value = "DELETE FROM person WHERE id IN (:ids) " +
+            "AND NOT EXISTS (SELECT 1 FROM book b WHERE b.person_id = person.id) " +
+            "AND NOT EXISTS (SELECT 1 FROM book_hold h WHERE h.person_id = person.id)", nativeQuery = true)
+    int deleteUnloanedByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Потоковое чтение всех читателей для выгрузки; вызывающий код обязан закрыть Stream
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + BooksRepositories.EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false"),
+            // Выгрузка всего каталога не должна вытеснять из кэша второго уровня часто читаемые записи
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("SELECT p FROM Person p ORDER BY p.id")
+    Stream<Person> streamAll();
 }
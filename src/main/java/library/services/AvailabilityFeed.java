@@ -0,0 +1,344 @@
+package library.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import library.events.BookChangedEvent;
+import library.events.LoanEvent;
+import library.util.TooManySubscribersException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поток изменений доступности книг (SSE, /book/availability) для экранов выдачи вместо периодического
+ * обновления страниц. Изменения приходят из LoanEvent и BookChangedEvent после коммита и раздаются
+ * отдельным потоком, так что запрос, выдавший книгу, не ждёт подписчиков.
+ *
+ * У каждого подписчика свой буфер не больше max-pending книг: повторные изменения одной книги схлопываются
+ * в последнее, а при переполнении буфер сбрасывается и клиент получает событие resync (перечитать страницу).
+ * Пока клиент переподключается, изменения ему не доставляются, поэтому переподключение с Last-Event-ID,
+ * за которым уже были изменения, тоже начинается с resync. id события - "эпоха-номер": эпоха своя у каждого
+ * запуска экземпляра, и id после перезапуска или с другого экземпляра всегда ведёт к resync.
+ * Отправка идёт на виртуальных потоках, не больше одной одновременно на подписчика: медленный клиент
+ * задерживает только себя, а его буфер не растёт.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AvailabilityFeed {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${library.availability.max-subscribers:5000}")
+    private int maxSubscribers;
+
+    @Value("${library.availability.max-pending:256}")
+    private int maxPending;
+
+    @Value("${library.availability.max-watched-books:100}")
+    private int maxWatchedBooks;
+
+    @Value("${library.availability.heartbeat-interval:30s}")
+    private Duration heartbeatInterval;
+
+    @Value("${library.availability.emitter-timeout:1h}")
+    private Duration emitterTimeout;
+
+    public enum Status {
+        AVAILABLE, TAKEN, DELETED
+    }
+
+    // sequence растёт с каждым изменением: по нему клиент может отбросить устаревшее
+    public record Update(long bookId, Status status, long sequence) {
+    }
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Подписчики на все книги и подписчики по id книги: изменение обходит только тех, кому оно нужно
+    private final Set<Subscriber> watchingAll = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Set<Subscriber>> watchingBook = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final String epoch = UUID.randomUUID().toString().replace("-", "");
+
+    private ExecutorService dispatcher;
+    private ExecutorService sender;
+    private ScheduledExecutorService heartbeat;
+    private Counter coalescedCounter;
+    private Counter resyncCounter;
+
+    @PostConstruct
+    void start() {
+        dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "availability-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sender = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("availability-sender-", 0).factory());
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "availability-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Комментарий раз в интервал держит соединение через прокси и выявляет отключившихся клиентов
+        long interval = heartbeatInterval.toMillis();
+        heartbeat.scheduleWithFixedDelay(() -> subscribers.forEach(Subscriber::heartbeat),
+                interval, interval, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("library.availability.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Подключённые подписчики потока доступности книг")
+                .register(meterRegistry);
+        coalescedCounter = meterRegistry.counter("library.availability.coalesced");
+        resyncCounter = meterRegistry.counter("library.availability.resync");
+    }
+
+    @PreDestroy
+    void stop() {
+        heartbeat.shutdownNow();
+        dispatcher.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        sender.shutdownNow();
+    }
+
+    /**
+     * Подписка на изменения указанных книг или, если bookIds пуст, всего каталога.
+     * Поток закрывается через emitter-timeout; EventSource в браузере переподключается сам
+     * и передаёт lastEventId - id последнего полученного события (null для новой подписки).
+     */
+    public SseEmitter subscribe(Collection<Long> bookIds, String lastEventId) {
+        Set<Long> watched = Set.copyOf(bookIds);
+        if (watched.size() > maxWatchedBooks) {
+            throw new IllegalArgumentException("Можно следить не более чем за " + maxWatchedBooks + " книгами");
+        }
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new TooManySubscribersException("Слишком много подписчиков на изменения книг, повторите позже");
+        }
+
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, watched);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+
+        subscribers.add(subscriber);
+        if (watched.isEmpty()) {
+            watchingAll.add(subscriber);
+        } else {
+            // Добавление внутри compute: close другого подписчика не удалит набор между созданием и добавлением
+            for (Long bookId : watched) {
+                watchingBook.compute(bookId, (id, watching) -> {
+                    Set<Subscriber> result = watching != null ? watching : ConcurrentHashMap.newKeySet();
+                    result.add(subscriber);
+                    return result;
+                });
+            }
+        }
+        if (missedUpdates(lastEventId)) {
+            // Изменения за время переподключения потеряны: клиент перечитает страницу
+            subscriber.resync();
+        } else {
+            // Первый комментарий сразу отправляет заголовки ответа, клиент видит, что подписка открыта
+            subscriber.heartbeat();
+        }
+        return emitter;
+    }
+
+    private boolean missedUpdates(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return false;
+        }
+        String id = lastEventId.trim();
+        int separator = id.lastIndexOf('-');
+        if (separator < 0 || !id.substring(0, separator).equals(epoch)) {
+            return true; // id другого запуска или экземпляра: что было между ними, неизвестно
+        }
+        try {
+            return Long.parseLong(id.substring(separator + 1)) < sequence.get();
+        } catch (NumberFormatException e) {
+            return true; // Повреждённый id - надёжнее перечитать
+        }
+    }
+
+    // id, который получил бы клиент, видевший все изменения на текущий момент
+    String currentEventId() {
+        return eventId(sequence.get());
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanEvent(LoanEvent event) {
+        publish(event.bookId(), event.type() == LoanEvent.Type.CHECKOUT ? Status.TAKEN : Status.AVAILABLE);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.deleted()) {
+            publish(event.bookId(), Status.DELETED);
+        }
+    }
+
+    private void publish(long bookId, Status status) {
+        // Номер растёт и без подписчиков: иначе клиент, переподключившийся после простоя, не заметил бы пропуска
+        long next = sequence.incrementAndGet();
+        if (subscriberCount.get() == 0) {
+            return;
+        }
+        Update update = new Update(bookId, status, next);
+        // Один поток раздачи сохраняет порядок изменений каждой книги
+        dispatcher.execute(() -> {
+            watchingAll.forEach(subscriber -> subscriber.offer(update));
+            Set<Subscriber> watching = watchingBook.get(bookId);
+            if (watching != null) {
+                watching.forEach(subscriber -> subscriber.offer(update));
+            }
+        });
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<Long> bookIds;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        // Ожидающие отправки изменения по книгам в порядке последнего изменения; защищены this
+        private final LinkedHashMap<Long, Update> pending = new LinkedHashMap<>();
+        private boolean overflowed;
+        private boolean heartbeatDue;
+
+        Subscriber(SseEmitter emitter, Set<Long> bookIds) {
+            this.emitter = emitter;
+            this.bookIds = bookIds;
+        }
+
+        void offer(Update update) {
+            synchronized (this) {
+                if (overflowed) {
+                    return; // Клиент всё равно перечитает страницу целиком
+                }
+                if (pending.remove(update.bookId()) != null) {
+                    coalescedCounter.increment();
+                } else if (pending.size() >= maxPending) {
+                    pending.clear();
+                    overflowed = true;
+                    resyncCounter.increment();
+                }
+                if (!overflowed) {
+                    pending.put(update.bookId(), update);
+                }
+            }
+            scheduleDrain();
+        }
+
+        void resync() {
+            synchronized (this) {
+                pending.clear();
+                overflowed = true;
+            }
+            resyncCounter.increment();
+            scheduleDrain();
+        }
+
+        void heartbeat() {
+            synchronized (this) {
+                heartbeatDue = true;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!closed.get() && draining.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::drain);
+                } catch (RuntimeException e) {
+                    draining.set(false); // Приложение останавливается
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                while (true) {
+                    List<Update> batch;
+                    boolean resync;
+                    boolean ping;
+                    synchronized (this) {
+                        if (pending.isEmpty() && !overflowed && !heartbeatDue) {
+                            // Сброс флага под той же блокировкой, что и offer: новое изменение запустит отправку заново
+                            draining.set(false);
+                            return;
+                        }
+                        batch = new ArrayList<>(pending.values());
+                        pending.clear();
+                        resync = overflowed;
+                        overflowed = false;
+                        ping = heartbeatDue;
+                        heartbeatDue = false;
+                    }
+
+                    if (resync) {
+                        emitter.send(SseEmitter.event().name("resync").data("resync"));
+                    }
+                    for (Update update : batch) {
+                        emitter.send(SseEmitter.event()
+                                .id(eventId(update.sequence()))
+                                .name("availability")
+                                .data(update, MediaType.APPLICATION_JSON));
+                    }
+                    if (ping && batch.isEmpty() && !resync) {
+                        emitter.send(SseEmitter.event().comment("ping"));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Клиент отключился или поток уже завершён
+                log.debug("Подписчик потока доступности отключён: {}", e.getMessage());
+                close();
+                emitter.completeWithError(e);
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            subscribers.remove(this);
+            if (bookIds.isEmpty()) {
+                watchingAll.remove(this);
+            } else {
+                for (Long bookId : bookIds) {
+                    watchingBook.computeIfPresent(bookId, (id, watching) -> {
+                        watching.remove(this);
+                        return watching.isEmpty() ? null : watching;
+                    });
+                }
+            }
+            subscriberCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package library.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import library.models.Book;
+import library.models.Person;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Точечный сброс кэша второго уровня после нативных UPDATE выдачи и возврата. Их пространство запросов
+ * (BooksRepositories.CIRCULATION_SPACE) не совпадает с таблицами сущностей, поэтому Hibernate не очищает
+ * регионы целиком, а сбрасываются только изменённые книги и коллекции Person.books их владельцев.
+ * Сброс выполняется сразу и ещё раз после завершения транзакции: параллельное чтение могло успеть
+ * положить в кэш строку, прочитанную до коммита.
+ */
+@Component
+@RequiredArgsConstructor
+public class BookCacheEvictor {
+    private static final String PERSON_BOOKS = Person.class.getName() + ".books";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public void evict(long bookId, Long ownerId) {
+        evict(List.of(bookId), ownerId == null ? List.of() : List.of(ownerId));
+    }
+
+    public void evict(Collection<Long> bookIds, Collection<Long> ownerIds) {
+        List<Long> books = List.copyOf(bookIds);
+        List<Long> owners = ownerIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (books.isEmpty() && owners.isEmpty()) {
+            return;
+        }
+        evictNow(books, owners);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(books, owners);
+                }
+            });
+        }
+    }
+
+    private void evictNow(List<Long> books, List<Long> owners) {
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        books.forEach(id -> cache.evictEntityData(Book.class, id));
+        owners.forEach(id -> cache.evictCollectionData(PERSON_BOOKS, id));
+    }
+}
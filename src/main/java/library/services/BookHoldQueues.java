@@ -0,0 +1,232 @@
+package library.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Очереди заявок в памяти - зеркало book_hold для чтения. У каждой книги свой неизменяемый снимок
+ * (читатели по порядку и их места), поэтому место читателя - два поиска в хеш-таблицах без блокировок.
+ * После коммита изменения очередь книги перечитывается из БД под блокировкой этой книги:
+ * пересборки популярной книги идут друг за другом и не задерживают остальные книги.
+ * Источник истины - таблица. Пока очередь книги не перечитана после изменения (или перечитать её
+ * не удалось), места этой книги читаются прямо из book_hold. Изменения, о которых этот экземпляр не знает
+ * (другие экземпляры приложения, каскадное удаление), подтягивает сверка всего зеркала раз в reconcile-interval.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookHoldQueues {
+    private static final String HOLDERS_SQL = "SELECT person_id FROM book_hold WHERE book_id = ? ORDER BY id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${library.holds.reconcile-interval:1m}")
+    private Duration reconcileInterval;
+
+    private final ConcurrentMap<Long, Queue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService reloader = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("hold-queue-reload-", 0).factory());
+    private ScheduledExecutorService scheduler;
+
+    // Метки времени чтений и изменений: чтение с большей меткой видит все закоммиченные изменения с меньшей
+    private final AtomicLong clock = new AtomicLong();
+    // Книги, изменённые после последнего успешного чтения их очереди, с меткой изменения
+    private final ConcurrentMap<Long, Long> stale = new ConcurrentHashMap<>();
+
+    // Снимок очереди книги: читатели в порядке заявок и их места (с 1)
+    private record Snapshot(List<Long> holders, Map<Long, Integer> positions) {
+        static final Snapshot EMPTY = new Snapshot(List.of(), Map.of());
+
+        static Snapshot of(List<Long> holders) {
+            Map<Long, Integer> positions = new HashMap<>(holders.size() * 2);
+            for (int i = 0; i < holders.size(); i++) {
+                positions.put(holders.get(i), i + 1);
+            }
+            return new Snapshot(List.copyOf(holders), positions);
+        }
+    }
+
+    private static final class Queue {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Snapshot snapshot = Snapshot.EMPTY;
+        // Метка чтения, из которого взят снимок; защищена lock
+        private long loadedAt;
+    }
+
+    @PostConstruct
+    void load() {
+        long ticket = clock.incrementAndGet();
+        loadAll().forEach((bookId, persons) -> {
+            Queue queue = new Queue();
+            queue.snapshot = Snapshot.of(persons);
+            queue.loadedAt = ticket;
+            queues.put(bookId, queue);
+        });
+        log.info("Очереди заявок загружены: книг с очередью {}", queues.size());
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hold-queue-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = reconcileInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::reconcile, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        reloader.shutdownNow();
+    }
+
+    private Map<Long, List<Long>> loadAll() {
+        Map<Long, List<Long>> holders = new HashMap<>();
+        jdbcTemplate.query("SELECT book_id, person_id FROM book_hold ORDER BY book_id, id", rs -> {
+            holders.computeIfAbsent(rs.getLong("book_id"), id -> new ArrayList<>()).add(rs.getLong("person_id"));
+        });
+        return holders;
+    }
+
+    // Место читателя в очереди книги (с 1) или 0, если заявки нет
+    public int position(long bookId, long personId) {
+        return snapshot(bookId).positions().getOrDefault(personId, 0);
+    }
+
+    public int length(long bookId) {
+        return snapshot(bookId).holders().size();
+    }
+
+    public List<Long> holders(long bookId) {
+        return snapshot(bookId).holders();
+    }
+
+    private Snapshot snapshot(long bookId) {
+        if (stale.containsKey(bookId)) {
+            // Зеркало старше последнего изменения книги - читаем очередь из таблицы
+            List<Long> holders = jdbcTemplate.queryForList(HOLDERS_SQL, Long.class, bookId);
+            return holders.isEmpty() ? Snapshot.EMPTY : Snapshot.of(holders);
+        }
+        Queue queue = queues.get(bookId);
+        return queue == null ? Snapshot.EMPTY : queue.snapshot;
+    }
+
+    // Перечитать очереди книг после коммита текущей транзакции (сразу, если транзакции нет)
+    public void reloadAfterCommit(Collection<Long> bookIds) {
+        List<Long> ids = List.copyOf(bookIds);
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(ids);
+                }
+            });
+        } else {
+            submit(ids);
+        }
+    }
+
+    private void submit(List<Long> ids) {
+        for (Long id : ids) {
+            stale.put(id, clock.incrementAndGet());
+        }
+        try {
+            for (Long id : ids) {
+                reloader.execute(() -> reload(id));
+            }
+        } catch (RejectedExecutionException e) {
+            log.debug("Приложение останавливается, очереди {} не перечитаны", ids);
+        }
+    }
+
+    // Сверка всего зеркала с book_hold: изменения других экземпляров, каскадные удаления, неудачные перечитывания
+    void reconcile() {
+        long ticket = clock.incrementAndGet();
+        Map<Long, List<Long>> holders;
+        try {
+            holders = loadAll();
+        } catch (RuntimeException e) {
+            log.error("Не удалось сверить очереди заявок с таблицей, повтор через {}", reconcileInterval, e);
+            return;
+        }
+        for (Map.Entry<Long, Queue> entry : queues.entrySet()) {
+            Queue queue = entry.getValue();
+            queue.lock.lock();
+            try {
+                if (queues.get(entry.getKey()) == queue) {
+                    apply(entry.getKey(), queue, holders.getOrDefault(entry.getKey(), List.of()), ticket);
+                }
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+        // Книги без очереди в зеркале перечитываются по одной: пустую очередь могли убрать после чтения сверки
+        List<Long> missing = holders.keySet().stream().filter(id -> !queues.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            submit(missing);
+        }
+        for (Long bookId : stale.keySet()) {
+            if (!holders.containsKey(bookId) && !queues.containsKey(bookId)) {
+                stale.computeIfPresent(bookId, (id, mark) -> mark < ticket ? null : mark);
+            }
+        }
+    }
+
+    void reload(long bookId) {
+        while (true) {
+            Queue queue = queues.computeIfAbsent(bookId, id -> new Queue());
+            queue.lock.lock();
+            try {
+                if (queues.get(bookId) != queue) {
+                    continue; // Пустую очередь успели убрать из таблицы - перечитываем в новую
+                }
+                long ticket = clock.incrementAndGet();
+                apply(bookId, queue, jdbcTemplate.queryForList(HOLDERS_SQL, Long.class, bookId), ticket);
+                return;
+            } catch (RuntimeException e) {
+                // Книга остаётся в stale: места читаются из таблицы, пока очередь не поправит сверка
+                log.error("Не удалось перечитать очередь заявок книги с ID: {}", bookId, e);
+                return;
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+    }
+
+    // Вызывается под блокировкой очереди; более старое чтение не затирает более свежий снимок
+    private void apply(long bookId, Queue queue, List<Long> holders, long ticket) {
+        if (ticket > queue.loadedAt) {
+            queue.snapshot = holders.isEmpty() ? Snapshot.EMPTY : Snapshot.of(holders);
+            queue.loadedAt = ticket;
+            if (holders.isEmpty()) {
+                queues.remove(bookId, queue);
+            }
+        }
+        stale.computeIfPresent(bookId, (id, mark) -> mark < ticket ? null : mark);
+    }
+}
@@ -0,0 +1,188 @@
+package library.services;
+
+import io.micrometer.core.annotation.Timed;
+import library.dto.BookLoanState;
+import library.dto.HoldResult;
+import library.events.LoanEvent;
+import library.models.BookHold;
+import library.repositories.BookHoldRepository;
+import library.repositories.BooksRepositories;
+import library.repositories.PeopleRepositories;
+import library.util.ResourceNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Заявки на выданные книги. Все изменения очереди книги идут под блокировкой строки этой книги
+ * (SELECT ... FOR UPDATE или UPDATE возврата), поэтому заявки одной книги выстраиваются строго по порядку,
+ * а возврат передаёт книгу первому в очереди в той же транзакции - свободной с очередью она не бывает.
+ * Разные книги друг друга не ждут. Места в очереди читаются из зеркала BookHoldQueues.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Timed(value = "library.service", histogram = true)
+public class BookHoldService {
+    private final BookHoldRepository bookHoldRepository;
+    private final BooksRepositories booksRepositories;
+    private final PeopleRepositories peopleRepositories;
+    private final BookHoldQueues bookHoldQueues;
+    private final CatalogVersion catalogVersion;
+    private final BookCacheEvictor bookCacheEvictor;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${library.holds.max-queue-length:100}")
+    private int maxQueueLength;
+
+    /**
+     * Заявка на книгу: свободная книга выдаётся сразу, выданная - ставит читателя в конец очереди.
+     * Повторная заявка того же читателя возвращает его текущее место.
+     */
+    @Transactional
+    public HoldResult placeHold(long bookId, long personId) {
+        log.info("Заявка на книгу с ID: {} от пользователя с ID: {}", bookId, personId);
+        if (!peopleRepositories.existsById(personId)) {
+            log.error("Пользователь с ID: {} не найден при подаче заявки", personId);
+            throw new ResourceNotFoundException("Пользователь не найден");
+        }
+
+        List<BookLoanState> states = booksRepositories.lockLoanStates(List.of(bookId));
+        if (states.isEmpty()) {
+            log.error("Книга с ID: {} не найдена при подаче заявки", bookId);
+            throw new ResourceNotFoundException("Книга не найдена");
+        }
+        Long owner = states.get(0).getPersonId();
+
+        if (owner == null) {
+            // Строка заблокирована, поэтому свободная книга не может уйти другому между проверкой и выдачей
+            booksRepositories.assignIfFree(bookId, personId, new Date(), BooksRepositories.ANY_VERSION);
+            bookCacheEvictor.evict(bookId, personId);
+            catalogVersion.bump();
+            eventPublisher.publishEvent(LoanEvent.checkout(bookId, personId));
+            log.info("Книга с ID: {} свободна и сразу выдана пользователю с ID: {}", bookId, personId);
+            return HoldResult.assigned(bookId, personId);
+        }
+        if (owner == personId) {
+            log.warn("Книга с ID: {} уже у пользователя с ID: {}, заявка не нужна", bookId, personId);
+            throw new IllegalStateException("Книга уже у этого читателя!");
+        }
+
+        Optional<BookHold> existing = bookHoldRepository.findByBookIdAndPersonId(bookId, personId);
+        if (existing.isPresent()) {
+            int position = (int) bookHoldRepository.countByBookIdAndIdLessThan(bookId, existing.get().getId()) + 1;
+            log.info("Пользователь с ID: {} уже в очереди на книгу с ID: {}, место {}", personId, bookId, position);
+            return HoldResult.queued(bookId, personId, position);
+        }
+
+        long length = bookHoldRepository.countByBookId(bookId);
+        if (length >= maxQueueLength) {
+            log.warn("Очередь на книгу с ID: {} заполнена: {} заявок", bookId, length);
+            throw new IllegalStateException("Очередь на книгу заполнена!");
+        }
+        bookHoldRepository.save(new BookHold(bookId, personId, new Date()));
+        bookHoldQueues.reloadAfterCommit(List.of(bookId));
+        log.info("Пользователь с ID: {} поставлен в очередь на книгу с ID: {}, место {}", personId, bookId, length + 1);
+        return HoldResult.queued(bookId, personId, (int) length + 1);
+    }
+
+    // Снимает заявку; false, если её не было
+    @Transactional
+    public boolean cancelHold(long bookId, long personId) {
+        log.info("Снятие заявки на книгу с ID: {} пользователя с ID: {}", bookId, personId);
+        if (bookHoldRepository.deleteByBookIdAndPersonId(bookId, personId) == 0) {
+            log.warn("Заявка на книгу с ID: {} пользователя с ID: {} не найдена", bookId, personId);
+            return false;
+        }
+        bookHoldQueues.reloadAfterCommit(List.of(bookId));
+        return true;
+    }
+
+    // Место в очереди из зеркала: 0, если заявки нет
+    public int position(long bookId, long personId) {
+        return bookHoldQueues.position(bookId, personId);
+    }
+
+    public int queueLength(long bookId) {
+        return bookHoldQueues.length(bookId);
+    }
+
+    /**
+     * Передача только что освобождённых книг первым в очередях. Вызывается в транзакции возврата после
+     * UPDATE-а, который уже держит блокировки строк книг, поэтому книгу не перехватит параллельная выдача.
+     * Возвращает id книги -> id нового владельца для переданных книг.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<Long, Long> handOff(Collection<Long> releasedBookIds) {
+        Map<Long, Long> handed = new HashMap<>();
+        if (releasedBookIds.isEmpty()) {
+            return handed;
+        }
+
+        Date takenAt = new Date();
+        for (BookHold head : bookHoldRepository.findHeadsByBookIdIn(releasedBookIds)) {
+            BookHold hold = claim(head);
+            if (hold == null) {
+                continue;
+            }
+            long bookId = hold.getBookId();
+            if (booksRepositories.assignIfFree(bookId, hold.getPersonId(), takenAt, BooksRepositories.ANY_VERSION) != 1) {
+                // Книга освобождена этой же транзакцией и заблокирована ею - расхождение означает ошибку в логике
+                throw new IllegalStateException("Книга с ID " + bookId + " не освобождена перед передачей по очереди");
+            }
+            eventPublisher.publishEvent(LoanEvent.checkout(bookId, hold.getPersonId()));
+            handed.put(bookId, hold.getPersonId());
+            log.info("Книга с ID: {} передана по очереди пользователю с ID: {}", bookId, hold.getPersonId());
+        }
+
+        if (!handed.isEmpty()) {
+            bookCacheEvictor.evict(handed.keySet(), handed.values());
+            catalogVersion.bump();
+            bookHoldQueues.reloadAfterCommit(handed.keySet());
+        }
+        return handed;
+    }
+
+    // Удаляет заявку-голову; если её уже сняли параллельно, переходит к следующей. null - очередь опустела
+    private BookHold claim(BookHold head) {
+        BookHold hold = head;
+        while (hold != null) {
+            if (bookHoldRepository.deleteHold(hold.getId()) == 1) {
+                return hold;
+            }
+            hold = bookHoldRepository.findFirstByBookIdOrderByIdAsc(head.getBookId()).orElse(null);
+        }
+        return null;
+    }
+
+    // Снимает все заявки читателя (перед его удалением)
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void cancelAllFor(long personId) {
+        List<Long> bookIds = bookHoldRepository.findBookIdsByPersonId(personId);
+        if (!bookIds.isEmpty()) {
+            bookHoldRepository.deleteByPersonId(personId);
+            bookHoldQueues.reloadAfterCommit(bookIds);
+            log.info("Сняты заявки пользователя с ID: {}: {}", personId, bookIds.size());
+        }
+    }
+
+    // Удаляет очередь книги (перед удалением книги)
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void dropQueue(long bookId) {
+        if (bookHoldRepository.deleteByBookId(bookId) > 0) {
+            bookHoldQueues.reloadAfterCommit(List.of(bookId));
+            log.info("Очередь заявок книги с ID: {} удалена", bookId);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package library.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import library.events.BookChangedEvent;
+import library.models.Book;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый импорт книг из CSV (title,author,year_of_release).
+ * Файл читается построчно, каждая пачка строк проверяется параллельно по ограничениям Book
+ * и вставляется одной транзакцией JDBC batch-ами; ошибки собираются в отчёт по номерам строк.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookImportService {
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final PlatformTransactionManager transactionManager;
+    private final CatalogVersion catalogVersion;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${library.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${library.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public record RowError(long line, String message) {
+    }
+
+    public record Report(long totalRows, long imported, long failed, List<RowError> errors, long elapsedMillis) {
+
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? imported : imported * 1000.0 / elapsedMillis;
+        }
+    }
+
+    // Строка CSV после разбора: либо книга, либо ошибка разбора
+    private record ParsedRow(long line, Book book, String error) {
+    }
+
+    public Report importCsv(InputStream in) throws IOException {
+        log.info("Массовый импорт книг, размер пачки: {}", batchSize);
+        long startMillis = System.currentTimeMillis();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        long totalRows = 0;
+        long imported = 0;
+        long failed = 0;
+        List<RowError> errors = new ArrayList<>();
+        List<ParsedRow> chunk = new ArrayList<>(batchSize);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.toLowerCase().startsWith("title"))) {
+                    continue; // Пустые строки и заголовок
+                }
+                totalRows++;
+                chunk.add(parse(lineNumber, line));
+
+                if (chunk.size() == batchSize) {
+                    List<RowError> chunkErrors = processChunk(chunk, transactionTemplate);
+                    imported += chunk.size() - chunkErrors.size();
+                    failed += chunkErrors.size();
+                    report(errors, chunkErrors);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            List<RowError> chunkErrors = processChunk(chunk, transactionTemplate);
+            imported += chunk.size() - chunkErrors.size();
+            failed += chunkErrors.size();
+            report(errors, chunkErrors);
+        }
+
+        Report result = new Report(totalRows, imported, failed, errors, System.currentTimeMillis() - startMillis);
+        log.info("Импорт завершён: строк {}, импортировано {}, с ошибками {}, {} строк/с",
+                totalRows, imported, failed, String.format("%.0f", result.rowsPerSecond()));
+        return result;
+    }
+
+    private List<RowError> processChunk(List<ParsedRow> chunk, TransactionTemplate transactionTemplate) {
+        // Проверка ограничений не зависит от БД, поэтому строки пачки проверяются параллельно
+        List<ParsedRow> checked = chunk.parallelStream()
+                .map(this::validate)
+                .toList();
+
+        List<RowError> chunkErrors = new ArrayList<>();
+        List<Book> valid = new ArrayList<>(checked.size());
+        for (ParsedRow row : checked) {
+            if (row.error() != null) {
+                chunkErrors.add(new RowError(row.line(), row.error()));
+            } else {
+                valid.add(row.book());
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Book book : valid) {
+                    entityManager.persist(book);
+                }
+                // Сбрасываем INSERT-ы batch-ем и очищаем контекст, чтобы он не рос от пачки к пачке
+                entityManager.flush();
+                entityManager.clear();
+                catalogVersion.bump();
+                // Поисковый индекс получит книги пачки после коммита, как и при сохранении по одной
+                for (Book book : valid) {
+                    eventPublisher.publishEvent(BookChangedEvent.saved(book.getId(), book.getTitle(), book.getAuthor()));
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Не удалось вставить пачку из {} книг", valid.size(), e);
+            for (ParsedRow row : checked) {
+                if (row.error() == null) {
+                    chunkErrors.add(new RowError(row.line(), "Ошибка записи в БД: " + e.getMessage()));
+                }
+            }
+        }
+        return chunkErrors;
+    }
+
+    private ParsedRow validate(ParsedRow row) {
+        if (row.error() != null) {
+            return row;
+        }
+        Set<ConstraintViolation<Book>> violations = validator.validate(row.book());
+        if (violations.isEmpty()) {
+            return row;
+        }
+        String message = violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+        return new ParsedRow(row.line(), null, message);
+    }
+
+    private void report(List<RowError> errors, List<RowError> chunkErrors) {
+        for (RowError error : chunkErrors) {
+            if (errors.size() >= maxReportedErrors) {
+                return;
+            }
+            errors.add(error);
+        }
+    }
+
+    private static ParsedRow parse(long lineNumber, String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 3) {
+            return new ParsedRow(lineNumber, null, "Ожидается 3 поля (title,author,year_of_release), получено " + fields.size());
+        }
+
+        Book book = new Book();
+        book.setTitle(fields.get(0).trim());
+        book.setAuthor(fields.get(1).trim());
+        try {
+            book.setYearOfRelease(Integer.parseInt(fields.get(2).trim()));
+        } catch (NumberFormatException e) {
+            return new ParsedRow(lineNumber, null, "Год выпуска должен быть числом: " + fields.get(2));
+        }
+        return new ParsedRow(lineNumber, book, null);
+    }
+
+    // Разбор строки CSV с поддержкой полей в кавычках и экранированных кавычек ("")
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
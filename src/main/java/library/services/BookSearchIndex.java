@@ -0,0 +1,258 @@
+package library.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс поиска книг по названию и автору в памяти.
+ * Префиксы ищутся по trie из приведённых к нижнему регистру слов (и целых строк),
+ * вхождения в середину слова - по триграммам. Структура потокобезопасна: чтения идут параллельно,
+ * изменения берут блокировку записи.
+ */
+public class BookSearchIndex {
+    private static final int NGRAM = 3;
+
+    // Сколько кандидатов собирать из поддерева trie до ранжирования
+    private static final int MAX_CANDIDATES = 2000;
+
+    private static final int SCORE_TITLE_PREFIX = 100;
+    private static final int SCORE_TITLE_WORD_PREFIX = 60;
+    private static final int SCORE_AUTHOR_PREFIX = 40;
+    private static final int SCORE_INFIX = 20;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TrieNode root = new TrieNode();
+    private final Map<String, Set<Long>> ngrams = new HashMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    private record Entry(long id, String title, String author) {
+    }
+
+    private record Match(long id, int score, int titleLength) {
+    }
+
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>(4);
+        private Set<Long> ids;
+    }
+
+    public static String fold(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT).replace('ё', 'е').trim();
+    }
+
+    public void put(long id, String title, String author) {
+        Entry entry = new Entry(id, fold(title), fold(author));
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.put(id, entry);
+            if (previous != null) {
+                unindex(previous);
+            }
+            index(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.remove(id);
+            if (previous != null) {
+                unindex(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ищет книги по префиксу слова названия/автора или по вхождению подстроки (от 3 символов).
+     * Возвращает id в порядке убывания релевантности.
+     */
+    public List<Long> search(String query, int limit) {
+        String folded = fold(query);
+        if (folded.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Set<Long> candidates = new HashSet<>();
+            TrieNode node = find(folded);
+            if (node != null) {
+                collect(node, candidates);
+            }
+            if (folded.length() >= NGRAM && candidates.size() < MAX_CANDIDATES) {
+                candidates.addAll(infixCandidates(folded));
+            }
+
+            List<Match> matches = new ArrayList<>(candidates.size());
+            for (Long id : candidates) {
+                Entry entry = entries.get(id);
+                int score = score(entry, folded);
+                if (score > 0) {
+                    matches.add(new Match(id, score, entry.title().length()));
+                }
+            }
+            return matches.stream()
+                    .sorted(Comparator.comparingInt(Match::score).reversed()
+                            .thenComparingInt(Match::titleLength)
+                            .thenComparingLong(Match::id))
+                    .limit(limit)
+                    .map(Match::id)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int score(Entry entry, String query) {
+        if (entry.title().startsWith(query)) {
+            return SCORE_TITLE_PREFIX;
+        }
+        if (anyWordStartsWith(entry.title(), query)) {
+            return SCORE_TITLE_WORD_PREFIX;
+        }
+        if (entry.author().startsWith(query) || anyWordStartsWith(entry.author(), query)) {
+            return SCORE_AUTHOR_PREFIX;
+        }
+        if (entry.title().contains(query) || entry.author().contains(query)) {
+            return SCORE_INFIX;
+        }
+        return 0;
+    }
+
+    private static boolean anyWordStartsWith(String text, String query) {
+        for (String word : words(text)) {
+            if (word.startsWith(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<Long> infixCandidates(String query) {
+        Set<Long> result = null;
+        for (int i = 0; i + NGRAM <= query.length(); i++) {
+            Set<Long> posting = ngrams.get(query.substring(i, i + NGRAM));
+            if (posting == null) {
+                return Set.of();
+            }
+            if (result == null) {
+                result = new HashSet<>(posting);
+            } else {
+                result.retainAll(posting);
+            }
+            if (result.isEmpty()) {
+                return result;
+            }
+        }
+        return result == null ? Set.of() : result;
+    }
+
+    private void collect(TrieNode node, Set<Long> candidates) {
+        if (node.ids != null) {
+            candidates.addAll(node.ids);
+        }
+        for (TrieNode child : node.children.values()) {
+            if (candidates.size() >= MAX_CANDIDATES) {
+                return;
+            }
+            collect(child, candidates);
+        }
+    }
+
+    private TrieNode find(String prefix) {
+        TrieNode node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private void index(Entry entry) {
+        for (String token : tokens(entry)) {
+            TrieNode node = root;
+            for (int i = 0; i < token.length(); i++) {
+                node = node.children.computeIfAbsent(token.charAt(i), c -> new TrieNode());
+            }
+            if (node.ids == null) {
+                node.ids = new HashSet<>(2);
+            }
+            node.ids.add(entry.id());
+        }
+        for (String gram : grams(entry)) {
+            ngrams.computeIfAbsent(gram, g -> new HashSet<>()).add(entry.id());
+        }
+    }
+
+    private void unindex(Entry entry) {
+        for (String token : tokens(entry)) {
+            TrieNode node = find(token);
+            if (node != null && node.ids != null) {
+                node.ids.remove(entry.id());
+            }
+        }
+        for (String gram : grams(entry)) {
+            Set<Long> posting = ngrams.get(gram);
+            if (posting != null) {
+                posting.remove(entry.id());
+                if (posting.isEmpty()) {
+                    ngrams.remove(gram);
+                }
+            }
+        }
+    }
+
+    // Токены trie: целые название и автор (для многословных префиксов) и каждое их слово
+    private static Set<String> tokens(Entry entry) {
+        Set<String> tokens = new HashSet<>();
+        addTokens(tokens, entry.title());
+        addTokens(tokens, entry.author());
+        return tokens;
+    }
+
+    private static void addTokens(Set<String> tokens, String text) {
+        if (!text.isEmpty()) {
+            tokens.add(text);
+        }
+        tokens.addAll(words(text));
+    }
+
+    private static Set<String> grams(Entry entry) {
+        Set<String> grams = new HashSet<>();
+        for (String text : List.of(entry.title(), entry.author())) {
+            for (int i = 0; i + NGRAM <= text.length(); i++) {
+                grams.add(text.substring(i, i + NGRAM));
+            }
+        }
+        return grams;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
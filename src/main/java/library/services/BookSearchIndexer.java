@@ -0,0 +1,101 @@
+package library.services;
+
+import jakarta.persistence.EntityManager;
+import library.events.BookChangedEvent;
+import library.models.Book;
+import library.repositories.BooksRepositories;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Поддерживает BookSearchIndex: строит его в фоне после старта и обновляет после коммита
+ * изменений книг. Пока индекс не построен, search возвращает пустой Optional и поиск идёт в БД.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookSearchIndexer {
+    private final BooksRepositories booksRepositories;
+    private final PlatformTransactionManager transactionManager;
+    private final EntityManager entityManager;
+
+    private final BookSearchIndex index = new BookSearchIndex();
+
+    // Книги, изменённые во время первичного построения: их состояние уже актуально, построение их не трогает
+    private final Set<Long> touchedDuringBuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean building;
+    private volatile boolean ready;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        Thread builder = new Thread(this::build, "book-search-index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public Optional<List<Long>> search(String query, int limit) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        return Optional.of(index.search(query, limit));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (building) {
+            touchedDuringBuild.add(event.bookId());
+        }
+        if (event.deleted()) {
+            index.remove(event.bookId());
+        } else {
+            index.put(event.bookId(), event.title(), event.author());
+        }
+    }
+
+    private void build() {
+        long startMillis = System.currentTimeMillis();
+        building = true;
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setReadOnly(true);
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Book> books = booksRepositories.streamAllWithOwner()) {
+                    Iterator<Book> iterator = books.iterator();
+                    for (long row = 1; iterator.hasNext(); row++) {
+                        Book book = iterator.next();
+                        if (!touchedDuringBuild.contains(book.getId())) {
+                            index.put(book.getId(), book.getTitle(), book.getAuthor());
+                        }
+                        if (row % BooksRepositories.EXPORT_FETCH_SIZE == 0) {
+                            entityManager.clear(); // Не держим весь каталог в контексте персистентности
+                        }
+                    }
+                }
+            });
+            ready = true;
+            log.info("Поисковый индекс книг построен: {} книг за {} мс", index.size(), System.currentTimeMillis() - startMillis);
+        } catch (RuntimeException e) {
+            log.error("Не удалось построить поисковый индекс книг, поиск продолжит работать через БД", e);
+        } finally {
+            building = false;
+            touchedDuringBuild.clear();
+        }
+    }
+}
@@ -1,33 +1,73 @@
 package library.services;
 
-import jakarta.transaction.Transactional;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManagerFactory;
+import library.dto.BookFacets;
+import library.dto.BookFilter;
+import library.dto.BookListItem;
+import library.dto.BookLoanState;
+import library.dto.BulkLoanResult;
+import library.events.BookChangedEvent;
+import library.events.LoanEvent;
 import library.models.Book;
 import library.models.Person;
 import library.repositories.BooksRepositories;
+import library.util.BookCursor;
+import library.util.KeysetPage;
 import library.util.ResourceNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
+@Timed(value = "library.service", histogram = true)
 public class BooksService {
 
     private final BooksRepositories booksRepositories;
     private final PeopleService peopleService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BookSearchIndexer bookSearchIndexer;
+    private final EntityManagerFactory entityManagerFactory;
+    private final CatalogVersion catalogVersion;
+    private final BookHoldService bookHoldService;
+    private final BookCacheEvictor bookCacheEvictor;
 
-    public List<Book> findAll(boolean sortByYear) {
-        log.info("Получение всех книг, сортировка по году: {}", sortByYear);
-        return sortByYear ? booksRepositories.findAll(Sort.by("yearOfRelease")) : booksRepositories.findAll();
-    }
+    @Value("${library.catalog.default-page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${library.catalog.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${library.search.max-results:50}")
+    private int maxSearchResults;
 
+    @Value("${library.loans.bulk-max-size:200}")
+    private int bulkMaxSize;
+
+    @Transactional(readOnly = true)
     public Book findOne(long id) {
         log.info("Поиск книги с ID: {}", id);
         return booksRepositories.findById(id)
@@ -41,29 +81,65 @@ public class BooksService {
     public void save(Book book) {
         log.info("Сохранение книги: {}", book);
         booksRepositories.save(book);
+        catalogVersion.bump();
+        eventPublisher.publishEvent(BookChangedEvent.saved(book.getId(), book.getTitle(), book.getAuthor()));
     }
 
     @Transactional
     public void update(long id, Book bookUpdated) {
+        update(id, bookUpdated, null);
+    }
+
+    /**
+     * Обновляет название, автора и год выпуска. Если передана ожидаемая версия (If-Match в API),
+     * книга, изменённая с тех пор кем-то другим, не перезаписывается: бросается OptimisticLockingFailureException.
+     */
+    @Transactional
+    public Book update(long id, Book bookUpdated, Long expectedVersion) {
         log.info("Обновление книги с ID: {}", id);
         Book existingBook = findOne(id);  // Используем проверенный метод для поиска
-        bookUpdated.setId(existingBook.getId());
-        bookUpdated.setOwner(existingBook.getOwner());
-        booksRepositories.save(bookUpdated);
+        checkVersion(existingBook, expectedVersion);
+
+        // Поля переносятся в загруженную сущность: владелец, дата выдачи и версия остаются как есть,
+        // а одновременное изменение другой транзакцией Hibernate обнаружит по версии при flush
+        existingBook.setTitle(bookUpdated.getTitle());
+        existingBook.setAuthor(bookUpdated.getAuthor());
+        existingBook.setYearOfRelease(bookUpdated.getYearOfRelease());
+        catalogVersion.bump();
+        eventPublisher.publishEvent(BookChangedEvent.saved(id, existingBook.getTitle(), existingBook.getAuthor()));
         log.info("Книга с ID: {} успешно обновлена", id);
+        return existingBook;
+    }
+
+    private static void checkVersion(Book book, Long expectedVersion) {
+        if (expectedVersion != null && book.getVersion() != expectedVersion) {
+            log.warn("Книга с ID: {} изменена: ожидалась версия {}, текущая {}", book.getId(), expectedVersion, book.getVersion());
+            throw new OptimisticLockingFailureException("Книга изменена другим пользователем");
+        }
     }
 
     @Transactional
     public void delete(long id) {
         log.info("Удаление книги с ID: {}", id);
-        if (booksRepositories.existsById(id)) {
-            booksRepositories.deleteById(id);
+        Optional<Book> book = booksRepositories.findById(id);
+        if (book.isPresent()) {
+            Person owner = book.get().getOwner();
+            bookHoldService.dropQueue(id);
+            booksRepositories.delete(book.get());
+            if (owner != null) {
+                // Кэш коллекции Person.books не знает об удалении книги со стороны Book
+                entityManagerFactory.unwrap(SessionFactory.class).getCache()
+                        .evictCollectionData(Person.class.getName() + ".books", owner.getId());
+            }
+            catalogVersion.bump();
+            eventPublisher.publishEvent(BookChangedEvent.deleted(id));
             log.info("Книга с ID: {} успешно удалена", id);
         } else {
             log.warn("Книга с ID: {} не найдена, не удалось удалить", id);
         }
     }
 
+    @Transactional(readOnly = true)
     public Person getBookOwner(long id) {
         log.info("Получение владельца книги с ID: {}", id);
         return booksRepositories.findById(id)
@@ -73,55 +149,260 @@ public class BooksService {
 
     @Transactional
     public void release(Long bookId, Long personId) {
+        release(bookId, personId, null);
+    }
+
+    @Transactional
+    public void release(Long bookId, Long personId, Long expectedVersion) {
         log.info("Освобождение книги с ID: {}", bookId);
-        Book book = findOne(bookId);
 
-        // Проверяем, есть ли владелец и совпадает ли его ID с personId
-        if (book.getOwner() != null && Long.valueOf(book.getOwner().getId()).equals(personId)) {
-            book.setOwner(null);
-            book.setTakenAt(null);
-            booksRepositories.save(book);
+        // Проверка владельца (и версии) и освобождение выполняются одним условным UPDATE;
+        // он же блокирует строку книги до передачи следующему в очереди
+        if (booksRepositories.releaseIfOwnedBy(bookId, personId, versionOrAny(expectedVersion)) == 1) {
+            bookCacheEvictor.evict(bookId, personId);
+            catalogVersion.bump();
+            eventPublisher.publishEvent(LoanEvent.returned(bookId, personId));
             log.info("Книга с ID: {} успешно освобождена", bookId);
-        } else {
-            log.warn("Книга с ID: {} не может быть освобождена, так как она не назначена этому пользователю", bookId);
-            throw new IllegalStateException("Ошибка: Книга не назначена пользователю или не принадлежит ему!");
+            bookHoldService.handOff(List.of(bookId));
+            return;
         }
-    }
-
 
+        Book book = findOne(bookId); // Бросит ResourceNotFoundException, если книги нет
+        checkVersion(book, expectedVersion);
+        log.warn("Книга с ID: {} не может быть освобождена, так как она не назначена этому пользователю", bookId);
+        throw new IllegalStateException("Ошибка: Книга не назначена пользователю или не принадлежит ему!");
+    }
 
     @Transactional
     public void assign(Long bookId, Long personId) {
+        assign(bookId, personId, null);
+    }
+
+    @Transactional
+    public void assign(Long bookId, Long personId, Long expectedVersion) {
         log.info("Назначение книги с ID: {} пользователю с ID: {}", bookId, personId);
 
-        Book book = findOne(bookId);
-        Person person = peopleService.findOne(personId); // Получение объекта Person
+        Person person = peopleService.findOne(personId); // Проверяем, что читатель существует
 
-        if (book.getOwner() == null) { // Проверяем, что владелец отсутствует
-            book.setOwner(person);
-            book.setTakenAt(new Date());
-            booksRepositories.save(book);
+        // Проверка "книга свободна" и выдача выполняются одним условным UPDATE,
+        // поэтому из двух одновременных выдач успешной будет только одна
+        if (booksRepositories.assignIfFree(bookId, personId, new Date(), versionOrAny(expectedVersion)) == 1) {
+            bookCacheEvictor.evict(bookId, personId);
+            catalogVersion.bump();
+            eventPublisher.publishEvent(LoanEvent.checkout(bookId, personId));
             log.info("Книга с ID: {} назначена пользователю: {}", bookId, person.getName());
+            return;
+        }
+
+        Book book = findOne(bookId);
+        if (book.getOwner() != null && book.getOwner().getId() == personId) {
+            // Книга уже назначена этому человеку - повторная выдача ничего не меняет
+            log.info("Книга с ID: {} уже назначена пользователю с ID: {}", bookId, personId);
         } else {
-            // Если владелец уже есть, проверяем, совпадает ли он с переданным personId
-            if (book.getOwner() != null && book.getOwner().getId() == person.getId()) {
-                // Возможный вариант обработки, если книга уже назначена этому человеку
-                log.info("Книга с ID: {} уже назначена пользователю с ID: {}", bookId, personId);
+            checkVersion(book, expectedVersion);
+            log.warn("Книга с ID: {} уже выдана", bookId);
+            throw new IllegalStateException("Книга уже выдана!");
+        }
+    }
+
+    /**
+     * Массовая выдача (групповое посещение): все свободные книги пачки достаются читателю в одной транзакции.
+     * Число запросов не зависит от размера пачки - блокирующее чтение владельцев и один UPDATE.
+     * Занятые другими книги и несуществующие id не прерывают выдачу, а попадают в отчёт.
+     */
+    @Transactional
+    public BulkLoanResult assignAll(Collection<Long> bookIds, long personId) {
+        List<Long> ids = bulkIds(bookIds);
+        log.info("Массовая выдача {} книг пользователю с ID: {}", ids.size(), personId);
+        peopleService.findOne(personId); // Проверяем, что читатель существует
+
+        Map<Long, Long> owners = lockOwners(ids);
+        List<Long> free = new ArrayList<>();
+        List<BulkLoanResult.Item> items = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (!owners.containsKey(id)) {
+                items.add(new BulkLoanResult.Item(id, BulkLoanResult.Status.NOT_FOUND, "Книга не найдена"));
+            } else if (owners.get(id) == null) {
+                free.add(id);
+                items.add(new BulkLoanResult.Item(id, BulkLoanResult.Status.OK, null));
+            } else if (owners.get(id) == personId) {
+                items.add(new BulkLoanResult.Item(id, BulkLoanResult.Status.OK, "Книга уже у этого читателя"));
             } else {
-                log.warn("Книга с ID: {} уже выдана", bookId);
-                throw new IllegalStateException("Книга уже выдана!");
+                items.add(new BulkLoanResult.Item(id, BulkLoanResult.Status.CONFLICT, "Книга уже выдана"));
             }
         }
+
+        if (!free.isEmpty()) {
+            int updated = booksRepositories.assignAllIfFree(free, personId, new Date());
+            if (updated != free.size()) {
+                // Строки заблокированы выше, поэтому расхождение означает ошибку в логике, а не гонку
+                throw new IllegalStateException("Массовая выдача изменила " + updated + " книг вместо " + free.size());
+            }
+            bookCacheEvictor.evict(free, List.of(personId));
+            catalogVersion.bump();
+            free.forEach(id -> eventPublisher.publishEvent(LoanEvent.checkout(id, personId)));
+        }
+        log.info("Массовая выдача пользователю с ID: {}: выдано {}, отклонено {}", personId, free.size(), ids.size() - free.size());
+        return new BulkLoanResult(items);
     }
 
-    public List<Book> findAll(int page, int booksPerPage, boolean sortByYear) {
-        log.info("Получение книг для страницы: {}, количество книг на странице: {}, сортировка по году: {}", page, booksPerPage, sortByYear);
-        Pageable pageable = PageRequest.of(page, booksPerPage, sortByYear ? Sort.by("yearOfRelease") : Sort.unsorted());
-        return booksRepositories.findAll(pageable).getContent();
+    /**
+     * Массовый возврат. Если personId задан, возвращаются только книги этого читателя;
+     * без него (ящик для возврата) освобождается любая выданная книга пачки.
+     */
+    @Transactional
+    public BulkLoanResult releaseAll(Collection<Long> bookIds, Long personId) {
+        List<Long> ids = bulkIds(bookIds);
+        log.info("Массовый возврат {} книг, пользователь с ID: {}", ids.size(), personId);
+
+        Map<Long, Long> owners = lockOwners(ids);
+        Map<Long, Long> returned = new HashMap<>();
+        List<BulkLoanResult.Item> items = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Long owner = owners.get(id);
+            if (!owners.containsKey(id)) {
+                items.add(new BulkLoanResult.Item(id, BulkLoanResult.Status.NOT_FOUND, "Книга не найдена"));
+            } else if (owner == null) {
+                items.add(new BulkLoanResult.Item(id, BulkLoanResult.Status.CONFLICT, "Книга не выдана"));
+            } else if (personId != null && !owner.equals(personId)) {
+                items.add(new BulkLoanResult.Item(id, BulkLoanResult.Status.CONFLICT, "Книга выдана другому читателю"));
+            } else {
+                returned.put(id, owner);
+                items.add(new BulkLoanResult.Item(id, BulkLoanResult.Status.OK, null));
+            }
+        }
+
+        if (!returned.isEmpty()) {
+            booksRepositories.releaseAll(returned.keySet());
+            bookCacheEvictor.evict(returned.keySet(), returned.values());
+            catalogVersion.bump();
+            returned.forEach((id, owner) -> eventPublisher.publishEvent(LoanEvent.returned(id, owner)));
+            bookHoldService.handOff(returned.keySet());
+        }
+        log.info("Массовый возврат: возвращено {}, отклонено {}", returned.size(), ids.size() - returned.size());
+        return new BulkLoanResult(items);
+    }
+
+    // Уникальные id в порядке запроса; размер пачки ограничен, чтобы IN (...) и блокировки оставались короткими
+    private List<Long> bulkIds(Collection<Long> bookIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        if (ids.size() > bulkMaxSize) {
+            throw new IllegalArgumentException("В пачке не более " + bulkMaxSize + " книг, передано " + ids.size());
+        }
+        return ids;
     }
 
-    public List<Book> searchByName(String query) {
+    // id книги -> id владельца (null для свободной); строки заблокированы до конца транзакции
+    private Map<Long, Long> lockOwners(List<Long> ids) {
+        Map<Long, Long> owners = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (BookLoanState state : booksRepositories.lockLoanStates(ids)) {
+                owners.put(state.getId(), state.getPersonId());
+            }
+        }
+        return owners;
+    }
+
+    private static long versionOrAny(Long expectedVersion) {
+        return expectedVersion == null ? BooksRepositories.ANY_VERSION : expectedVersion;
+    }
+
+    @Transactional(readOnly = true)
+    public List<BookListItem> findAll(int page, int booksPerPage, boolean sortByYear) {
+        int size = pageSize(booksPerPage);
+        log.info("Получение книг для страницы: {}, количество книг на странице: {}, сортировка по году: {}", page, size, sortByYear);
+        Pageable pageable = PageRequest.of(page, size, sortByYear ? Sort.by("yearOfRelease") : Sort.unsorted());
+        return booksRepositories.findListItems(pageable).getContent();
+    }
+
+    /**
+     * Keyset-пагинация каталога. Страница определяется курсором after (следующая страница)
+     * или before (предыдущая); без курсоров возвращается первая страница.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<BookListItem> findPage(String after, String before, Integer booksPerPage, boolean sortByYear) {
+        return findPage(after, before, booksPerPage, sortByYear, BookFilter.NONE);
+    }
+
+    // То же с фильтрами каталога; курсоры те же, фильтры передаются вместе с ними
+    @Transactional(readOnly = true)
+    public KeysetPage<BookListItem> findPage(String after, String before, Integer booksPerPage, boolean sortByYear,
+                                             BookFilter filter) {
+        int size = pageSize(booksPerPage);
+        log.info("Получение страницы книг: after = {}, before = {}, размер = {}, сортировка по году: {}, фильтр: {}",
+                after, before, size, sortByYear, filter);
+
+        if (before != null) {
+            List<BookListItem> rows = fetchBefore(BookCursor.decode(before, sortByYear), filter, size + 1);
+            boolean hasPrev = rows.size() > size;
+            List<BookListItem> items = new ArrayList<>(hasPrev ? rows.subList(0, size) : rows);
+            Collections.reverse(items);
+            return new KeysetPage<>(items,
+                    items.isEmpty() ? null : BookCursor.of(items.get(items.size() - 1), sortByYear).encode(),
+                    hasPrev ? BookCursor.of(items.get(0), sortByYear).encode() : null);
+        }
+
+        BookCursor cursor = after != null ? BookCursor.decode(after, sortByYear) : BookCursor.start(sortByYear);
+        List<BookListItem> rows = fetchAfter(cursor, filter, size + 1);
+        boolean hasNext = rows.size() > size;
+        List<BookListItem> items = hasNext ? rows.subList(0, size) : rows;
+        return new KeysetPage<>(items,
+                hasNext ? BookCursor.of(items.get(items.size() - 1), sortByYear).encode() : null,
+                after != null && !items.isEmpty() ? BookCursor.of(items.get(0), sortByYear).encode() : null);
+    }
+
+    @Transactional(readOnly = true)
+    public BookFacets facets(BookFilter filter) {
+        log.info("Подсчёт фильтров каталога: {}", filter);
+        return booksRepositories.countFacets(filter);
+    }
+
+    private List<BookListItem> fetchAfter(BookCursor cursor, BookFilter filter, int limit) {
+        if (!filter.isEmpty()) {
+            return booksRepositories.findFilteredPage(filter, cursor, true, limit);
+        }
+        return cursor.sortByYear()
+                ? booksRepositories.findPageAfterYear(cursor.yearOfRelease(), cursor.id(), limit)
+                : booksRepositories.findPageAfterId(cursor.id(), limit);
+    }
+
+    private List<BookListItem> fetchBefore(BookCursor cursor, BookFilter filter, int limit) {
+        if (!filter.isEmpty()) {
+            return booksRepositories.findFilteredPage(filter, cursor, false, limit);
+        }
+        return cursor.sortByYear()
+                ? booksRepositories.findPageBeforeYear(cursor.yearOfRelease(), cursor.id(), limit)
+                : booksRepositories.findPageBeforeId(cursor.id(), limit);
+    }
+
+    // Размер страницы всегда ограничен сверху, чтобы запрос не мог выгрузить весь каталог
+    private int pageSize(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return defaultPageSize;
+        }
+        return Math.min(requested, maxPageSize);
+    }
+
+    @Transactional(readOnly = true)
+    public List<BookListItem> searchByName(String query) {
         log.info("Поиск книг по запросу: {}", query);
-        return booksRepositories.findByTitleStartingWith(query);
+
+        Optional<List<Long>> rankedIds = bookSearchIndexer.search(query, maxSearchResults);
+        if (rankedIds.isEmpty()) {
+            // Индекс ещё строится - ищем в БД, как раньше
+            return booksRepositories.findListItemsByTitleStartingWith(query);
+        }
+
+        List<Long> ids = rankedIds.get();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        // Одна выборка по первичному ключу, затем восстанавливаем порядок релевантности из индекса
+        Map<Long, BookListItem> byId = booksRepositories.findListItemsByIdIn(ids).stream()
+                .collect(Collectors.toMap(BookListItem::getId, Function.identity()));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 }
@@ -0,0 +1,35 @@
+package library.services;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Монотонно растущая версия каталога: увеличивается каждой записью в BooksService, PeopleService и импортом.
+ * По ней кэшируются отрендеренные списки и строится ETag, поэтому версия растёт только после фиксации
+ * транзакции - иначе параллельный запрос успел бы положить в кэш старые данные под новой версией.
+ * Начальное значение - время запуска, чтобы после перезапуска ETag браузеров не совпадали с новыми.
+ */
+@Component
+public class CatalogVersion {
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    public long current() {
+        return version.get();
+    }
+
+    public void bump() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+            });
+        } else {
+            version.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package library.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import library.dto.BookListItem;
+import library.dto.PersonListItem;
+import library.events.LoanEvent;
+import library.models.CirculationStat.Kind;
+import library.repositories.BooksRepositories;
+import library.repositories.PeopleRepositories;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Статистика выдач для панели /stats: сколько раз брали каждую книгу, сколько книг на руках у читателя,
+ * сколько выдач за день. Счётчики обновляются из LoanEvent в LongAdder без блокировок, раз в
+ * checkpoint-interval приращения дописываются в circulation_stats, а значения перечитываются оттуда
+ * (так сходятся несколько экземпляров приложения). Топы пересчитываются там же, поэтому любое чтение
+ * панели - это обращение к готовым значениям в памяти, независимо от объёма истории.
+ *
+ * Пустая таблица при запуске собирается из book_loans. Пересборку непустой таблицы (rebuild-on-startup)
+ * включают только при остановленных остальных экземплярах: их ещё не записанные приращения уже есть
+ * в book_loans, и после пересборки они были бы посчитаны дважды.
+ */
+@Component
+@Lazy(false) // Таблица должна быть собрана до первой выдачи, а не при первом обращении к панели
+@RequiredArgsConstructor
+@Slf4j
+public class CirculationStats {
+    private static final String UPDATE_STAT =
+            "UPDATE circulation_stats SET total = total + ? WHERE kind = ? AND stat_key = ?";
+    private static final String INSERT_STAT =
+            "INSERT INTO circulation_stats (kind, stat_key, total) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final BooksRepositories booksRepositories;
+    private final PeopleRepositories peopleRepositories;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${library.stats.checkpoint-interval:30s}")
+    private Duration checkpointInterval;
+
+    @Value("${library.stats.top-size:100}")
+    private int topSize;
+
+    @Value("${library.stats.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    public record BookCount(long bookId, String title, String author, long loans) {
+    }
+
+    public record ReaderCount(long personId, String name, long activeLoans) {
+    }
+
+    public record DayCount(LocalDate day, long loans) {
+    }
+
+    private record StatKey(Kind kind, long key) {
+    }
+
+    // Счётчик процесса никогда не сбрасывается: в таблицу уходит разница с flushed, поэтому
+    // приращения, пришедшие во время контрольной точки, не теряются, а попадают в следующую
+    private static final class Accumulator {
+        private final LongAdder local = new LongAdder();
+        private volatile long flushed;
+
+        long pending() {
+            return local.sum() - flushed;
+        }
+    }
+
+    private final Map<StatKey, Accumulator> accumulators = new ConcurrentHashMap<>();
+    private volatile Map<StatKey, Long> base = Map.of();
+    private volatile List<BookCount> topBooks = List.of();
+    private volatile List<ReaderCount> topReaders = List.of();
+
+    private TransactionTemplate transactionTemplate;
+    private Timer checkpointTimer;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        checkpointTimer = Timer.builder("library.stats.checkpoint")
+                .description("Запись приращений статистики выдач в circulation_stats")
+                .register(meterRegistry);
+
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM circulation_stats", Long.class);
+        if (rebuildOnStartup) {
+            log.warn("Пересборка статистики выдач при запуске: остальные экземпляры должны быть остановлены");
+            rebuild();
+        } else if (rows == null || rows == 0) {
+            try {
+                rebuild();
+            } catch (DuplicateKeyException e) {
+                // Одновременно запущенный экземпляр уже собрал пустую таблицу
+                log.info("Статистика выдач уже собрана другим экземпляром");
+            }
+        }
+        checkpoint();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "circulation-stats-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = checkpointInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::checkpointQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        checkpointQuietly(); // Дописываем приращения, накопленные после последней контрольной точки
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanEvent(LoanEvent event) {
+        if (event.type() == LoanEvent.Type.CHECKOUT) {
+            add(Kind.BOOK_LOANS, event.bookId(), 1);
+            add(Kind.ACTIVE_LOANS, event.personId(), 1);
+            add(Kind.DAY_LOANS, dayKey(event.occurredAt().toInstant().atZone(ZoneId.systemDefault()).toLocalDate()), 1);
+        } else {
+            add(Kind.ACTIVE_LOANS, event.personId(), -1);
+        }
+    }
+
+    public List<BookCount> mostBorrowed(int limit) {
+        List<BookCount> books = topBooks;
+        return books.subList(0, Math.min(limit, books.size()));
+    }
+
+    public List<ReaderCount> mostActiveReaders(int limit) {
+        List<ReaderCount> readers = topReaders;
+        return readers.subList(0, Math.min(limit, readers.size()));
+    }
+
+    public long activeLoans(long personId) {
+        return value(new StatKey(Kind.ACTIVE_LOANS, personId));
+    }
+
+    // Выдачи за последние days дней, начиная с сегодняшнего
+    public List<DayCount> loansPerDay(int days) {
+        LocalDate today = LocalDate.now();
+        List<DayCount> result = new ArrayList<>(days);
+        for (int i = 0; i < days; i++) {
+            LocalDate day = today.minusDays(i);
+            result.add(new DayCount(day, value(new StatKey(Kind.DAY_LOANS, dayKey(day)))));
+        }
+        return result;
+    }
+
+    private long value(StatKey key) {
+        Accumulator accumulator = accumulators.get(key);
+        return base.getOrDefault(key, 0L) + (accumulator == null ? 0 : accumulator.pending());
+    }
+
+    private void add(Kind kind, long key, long delta) {
+        accumulators.computeIfAbsent(new StatKey(kind, key), k -> new Accumulator()).local.add(delta);
+    }
+
+    private static long dayKey(LocalDate day) {
+        return day.getYear() * 10_000L + day.getMonthValue() * 100L + day.getDayOfMonth();
+    }
+
+    // Пересборка из истории: три агрегата по book_loans в одной транзакции
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM circulation_stats");
+            jdbcTemplate.update("INSERT INTO circulation_stats (kind, stat_key, total) " +
+                    "SELECT 'BOOK_LOANS', book_id, COUNT(*) FROM book_loans GROUP BY book_id");
+            jdbcTemplate.update("INSERT INTO circulation_stats (kind, stat_key, total) " +
+                    "SELECT 'ACTIVE_LOANS', person_id, COUNT(*) FROM book_loans WHERE return_date IS NULL GROUP BY person_id");
+            jdbcTemplate.update("INSERT INTO circulation_stats (kind, stat_key, total) " +
+                    "SELECT 'DAY_LOANS', EXTRACT(YEAR FROM loan_date) * 10000 + EXTRACT(MONTH FROM loan_date) * 100 " +
+                    "+ EXTRACT(DAY FROM loan_date), COUNT(*) FROM book_loans GROUP BY loan_date");
+        });
+        log.info("Статистика выдач пересобрана из book_loans за {} мс", System.currentTimeMillis() - start);
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            // Приращения остаются в памяти и уйдут со следующей контрольной точкой
+            log.error("Не удалось сохранить контрольную точку статистики выдач", e);
+        }
+    }
+
+    private synchronized void checkpoint() {
+        checkpointTimer.record(() -> {
+            Map<StatKey, Long> deltas = new HashMap<>();
+            accumulators.forEach((key, accumulator) -> {
+                long pending = accumulator.pending();
+                if (pending != 0) {
+                    deltas.put(key, pending);
+                }
+            });
+            if (!deltas.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> write(deltas));
+                // Приращения уже в таблице: отмечаем их сразу после коммита, чтобы сбой перечитывания
+                // не отправил их туда второй раз. База в памяти дополняется ими до следующего перечитывания
+                Map<StatKey, Long> patched = new HashMap<>(base);
+                deltas.forEach((key, delta) -> patched.merge(key, delta, Long::sum));
+                // Сначала отмечаем записанное, потом подменяем базу: на мгновение чтение может недосчитать, но не удвоить
+                deltas.forEach((key, delta) -> accumulators.get(key).flushed += delta);
+                base = patched;
+            }
+
+            try {
+                reload();
+            } catch (RuntimeException e) {
+                // Записанное не теряется и не повторяется; значения других экземпляров и топы догонят в следующий раз
+                log.error("Не удалось перечитать статистику выдач из circulation_stats", e);
+            }
+        });
+    }
+
+    // Общие значения всех экземпляров и топы по ним
+    private void reload() {
+        Map<StatKey, Long> reloaded = new HashMap<>();
+        jdbcTemplate.query("SELECT kind, stat_key, total FROM circulation_stats", rs -> {
+            reloaded.put(new StatKey(Kind.valueOf(rs.getString("kind")), rs.getLong("stat_key")), rs.getLong("total"));
+        });
+        List<BookCount> books = computeTopBooks(reloaded);
+        List<ReaderCount> readers = computeTopReaders(reloaded);
+        base = reloaded;
+        topBooks = books;
+        topReaders = readers;
+    }
+
+    // UPDATE для существующих ключей, INSERT для новых - без зависимости от диалекта upsert
+    private void write(Map<StatKey, Long> deltas) {
+        List<StatKey> keys = new ArrayList<>(deltas.keySet());
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_STAT, keys, keys.size(), (ps, key) -> {
+            ps.setLong(1, deltas.get(key));
+            ps.setString(2, key.kind().name());
+            ps.setLong(3, key.key());
+        })[0];
+
+        List<StatKey> missing = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (updated[i] == 0) {
+                missing.add(keys.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_STAT, missing, missing.size(), (ps, key) -> {
+                ps.setString(1, key.kind().name());
+                ps.setLong(2, key.key());
+                ps.setLong(3, deltas.get(key));
+            });
+        }
+    }
+
+    private List<BookCount> computeTopBooks(Map<StatKey, Long> values) {
+        List<Map.Entry<StatKey, Long>> top = top(values, Kind.BOOK_LOANS);
+        Map<Long, BookListItem> books = booksRepositories.findListItemsByIdIn(ids(top)).stream()
+                .collect(Collectors.toMap(BookListItem::getId, Function.identity()));
+        List<BookCount> result = new ArrayList<>(top.size());
+        for (Map.Entry<StatKey, Long> entry : top) {
+            BookListItem book = books.get(entry.getKey().key());
+            if (book != null) { // Удалённые книги в топ не попадают
+                result.add(new BookCount(book.getId(), book.getTitle(), book.getAuthor(), entry.getValue()));
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    private List<ReaderCount> computeTopReaders(Map<StatKey, Long> values) {
+        List<Map.Entry<StatKey, Long>> top = top(values, Kind.ACTIVE_LOANS);
+        Map<Long, PersonListItem> people = peopleRepositories.findListItemsByIdIn(ids(top)).stream()
+                .collect(Collectors.toMap(PersonListItem::getId, Function.identity()));
+        List<ReaderCount> result = new ArrayList<>(top.size());
+        for (Map.Entry<StatKey, Long> entry : top) {
+            PersonListItem person = people.get(entry.getKey().key());
+            if (person != null) {
+                result.add(new ReaderCount(person.getId(), person.getName(), entry.getValue()));
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    // topSize наибольших положительных значений вида kind по убыванию: куча на topSize элементов, O(n log k)
+    private List<Map.Entry<StatKey, Long>> top(Map<StatKey, Long> values, Kind kind) {
+        PriorityQueue<Map.Entry<StatKey, Long>> heap = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<StatKey, Long> entry : values.entrySet()) {
+            if (entry.getKey().kind() != kind || entry.getValue() <= 0) {
+                continue;
+            }
+            heap.offer(entry);
+            if (heap.size() > topSize) {
+                heap.poll();
+            }
+        }
+        List<Map.Entry<StatKey, Long>> result = new ArrayList<>(heap);
+        result.sort(Map.Entry.<StatKey, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(entry -> entry.getKey().key()));
+        return result;
+    }
+
+    private static List<Long> ids(List<Map.Entry<StatKey, Long>> entries) {
+        return entries.stream().map(entry -> entry.getKey().key()).toList();
+    }
+}
@@ -0,0 +1,155 @@
+package library.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import library.models.Book;
+import library.models.Person;
+import library.repositories.BooksRepositories;
+import library.repositories.PeopleRepositories;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Потоковая выгрузка каталога и читателей в CSV / NDJSON.
+ * Строки читаются из серверного курсора и сразу пишутся в ответ, сущности отсоединяются
+ * от контекста персистентности, поэтому расход памяти не зависит от размера таблиц.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExportService {
+    private final BooksRepositories booksRepositories;
+    private final PeopleRepositories peopleRepositories;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    public enum Format {
+        CSV("text/csv"),
+        NDJSON("application/x-ndjson");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public static Format of(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private record BookRow(long id, String title, String author, int yearOfRelease, String ownerName, Date takenAt) {
+    }
+
+    private record PersonRow(long id, String name, int yearOfBirth) {
+    }
+
+    @Transactional(readOnly = true)
+    public void exportBooks(Format format, OutputStream out) throws IOException {
+        log.info("Выгрузка книг в формате {}", format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == Format.CSV) {
+            writer.write("id,title,author,year_of_release,owner_name,taken_at\n");
+        }
+
+        long rows = 0;
+        try (Stream<Book> books = booksRepositories.streamAllWithOwner()) {
+            Iterator<Book> iterator = books.iterator();
+            while (iterator.hasNext()) {
+                Book book = iterator.next();
+                Person owner = book.getOwner();
+                BookRow row = new BookRow(book.getId(), book.getTitle(), book.getAuthor(), book.getYearOfRelease(),
+                        owner == null ? null : owner.getName(), book.getTakenAt());
+                detach(book, owner);
+
+                if (format == Format.CSV) {
+                    writeCsvLine(writer, row.id(), row.title(), row.author(), row.yearOfRelease(),
+                            row.ownerName(), row.takenAt() == null ? null : row.takenAt().toInstant());
+                } else {
+                    writeJsonLine(writer, row);
+                }
+                rows++;
+            }
+        }
+        writer.flush();
+        log.info("Выгрузка книг завершена, строк: {}", rows);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportPeople(Format format, OutputStream out) throws IOException {
+        log.info("Выгрузка читателей в формате {}", format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == Format.CSV) {
+            writer.write("id,name,year_of_birth\n");
+        }
+
+        long rows = 0;
+        try (Stream<Person> people = peopleRepositories.streamAll()) {
+            Iterator<Person> iterator = people.iterator();
+            while (iterator.hasNext()) {
+                Person person = iterator.next();
+                PersonRow row = new PersonRow(person.getId(), person.getName(), person.getYearOfBirth());
+                entityManager.detach(person);
+
+                if (format == Format.CSV) {
+                    writeCsvLine(writer, row.id(), row.name(), row.yearOfBirth());
+                } else {
+                    writeJsonLine(writer, row);
+                }
+                rows++;
+            }
+        }
+        writer.flush();
+        log.info("Выгрузка читателей завершена, строк: {}", rows);
+    }
+
+    // Отсоединяем прочитанные сущности, иначе контекст персистентности растёт с каждой строкой
+    private void detach(Book book, Person owner) {
+        entityManager.detach(book);
+        if (owner != null && entityManager.contains(owner)) {
+            entityManager.detach(owner);
+        }
+    }
+
+    private void writeJsonLine(Writer writer, Object row) throws IOException {
+        writer.write(objectMapper.writeValueAsString(row));
+        writer.write('\n');
+    }
+
+    private static void writeCsvLine(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvEscape(values[i]));
+        }
+        writer.write('\n');
+    }
+
+    private static String csvEscape(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
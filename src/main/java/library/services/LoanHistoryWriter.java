@@ -0,0 +1,254 @@
+package library.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import library.events.LoanEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пишет историю выдач в book_loans в фоне.
+ * События копятся в ограниченной очереди и сбрасываются пачками JDBC batch,
+ * поэтому в запросе пользователя нет синхронного INSERT.
+ * Временные ошибки БД повторяются, пока пачка не запишется; событие, которое БД отвергает само по себе,
+ * откладывается в book_loans_dead_letter, а не тянет за собой всю пачку.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LoanHistoryWriter {
+    private static final String INSERT_LOAN =
+            "INSERT INTO book_loans (book_id, person_id, loan_date) VALUES (?, ?, ?)";
+    private static final String COMPLETE_LOAN =
+            "UPDATE book_loans SET return_date = ? WHERE book_id = ? AND person_id = ? AND return_date IS NULL";
+    private static final String INSERT_DEAD_LETTER =
+            "INSERT INTO book_loans_dead_letter (event_type, book_id, person_id, occurred_at, error, failed_at) " +
+                    "VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+
+    // При остановке приложения БД ждём ограниченно, иначе недоступная база задержала бы остановку навсегда
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${library.loans.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${library.loans.batch-size:500}")
+    private int batchSize;
+
+    @Value("${library.loans.flush-interval:200ms}")
+    private Duration flushInterval;
+
+    @Value("${library.loans.retry-initial-backoff:100ms}")
+    private Duration retryInitialBackoff;
+
+    @Value("${library.loans.retry-max-backoff:30s}")
+    private Duration retryMaxBackoff;
+
+    private BlockingQueue<LoanEvent> queue;
+    private TransactionTemplate transactionTemplate;
+    private Timer flushTimer;
+    private Counter writtenCounter;
+    private Counter failedCounter;
+    private Counter retriedCounter;
+    private Counter deadLetterCounter;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Gauge.builder("library.loans.queue.depth", queue, BlockingQueue::size)
+                .description("События выдачи, ожидающие записи в book_loans")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("library.loans.flush")
+                .description("Время записи одной пачки в book_loans")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        writtenCounter = meterRegistry.counter("library.loans.written");
+        failedCounter = meterRegistry.counter("library.loans.failed");
+        retriedCounter = meterRegistry.counter("library.loans.retried");
+        deadLetterCounter = meterRegistry.counter("library.loans.dead_letter");
+
+        running = true;
+        writerThread = new Thread(this::runWriter, "loan-history-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Фоновая запись истории выдач запущена: очередь {}, пачка {}", queueCapacity, batchSize);
+    }
+
+    // Вызывается после коммита транзакции assign/release, чтобы не записать откатившуюся выдачу
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoanEvent(LoanEvent event) {
+        try {
+            // Очередь ограничена: если писатель не успевает, запрос ждёт, но событие не теряется
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedCounter.increment();
+            log.error("Событие {} не попало в очередь истории выдач", event);
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+
+        // Дописываем всё, что осталось в очереди, чтобы не потерять выдачи при остановке
+        List<LoanEvent> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+        log.info("Фоновая запись истории выдач остановлена, дописано при остановке: {}", rest.size());
+    }
+
+    private void runWriter() {
+        List<LoanEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                LoanEvent first = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<LoanEvent> batch) {
+        long startNanos = System.nanoTime();
+        try {
+            RuntimeException error = writeWithRetry(batch);
+            if (error == null) {
+                writtenCounter.increment(batch.size());
+                return;
+            }
+            if (batch.size() > 1) {
+                // Пачку отвергли сами данные: пишем события по одному, чтобы найти плохие, не теряя остальных
+                log.warn("Пачка из {} событий отвергнута БД, запись по одному: {}", batch.size(), error.getMessage());
+                for (LoanEvent event : batch) {
+                    RuntimeException eventError = writeWithRetry(List.of(event));
+                    if (eventError == null) {
+                        writtenCounter.increment();
+                    } else {
+                        deadLetter(event, eventError);
+                    }
+                }
+            } else {
+                deadLetter(batch.get(0), error);
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Записывает события одной транзакцией. Временные ошибки (нет соединения, таймаут, взаимоблокировка)
+     * повторяются с растущей паузой, пока запись не пройдёт: пачка остаётся первой, новые события ждут в очереди.
+     * Возвращает null при успехе или ошибку, которую повтор не исправит (нарушение ограничений, ошибка SQL).
+     */
+    private RuntimeException writeWithRetry(List<LoanEvent> events) {
+        long backoffMillis = retryInitialBackoff.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> writeAll(events));
+                return null;
+            } catch (RuntimeException e) {
+                if (isPermanent(e) || (!running && attempt >= SHUTDOWN_ATTEMPTS)) {
+                    return e;
+                }
+                retriedCounter.increment();
+                log.warn("Запись {} событий в book_loans не удалась (попытка {}), повтор через {} мс: {}",
+                        events.size(), attempt, backoffMillis, e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return e;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, retryMaxBackoff.toMillis());
+            }
+        }
+    }
+
+    private static boolean isPermanent(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException);
+    }
+
+    private void writeAll(List<LoanEvent> batch) {
+        // Подряд идущие события одного типа пишем одной пачкой, сохраняя порядок выдача -> возврат
+        int from = 0;
+        while (from < batch.size()) {
+            LoanEvent.Type type = batch.get(from).type();
+            int to = from;
+            while (to < batch.size() && batch.get(to).type() == type) {
+                to++;
+            }
+            writeRun(type, batch.subList(from, to));
+            from = to;
+        }
+    }
+
+    // Событие, которое не удалось записать, сохраняется для разбора; если недоступна и эта таблица - остаётся в логе
+    private void deadLetter(LoanEvent event, RuntimeException error) {
+        failedCounter.increment();
+        try {
+            jdbcTemplate.update(INSERT_DEAD_LETTER, event.type().name(), event.bookId(), event.personId(),
+                    new Timestamp(event.occurredAt().getTime()), String.valueOf(error.getMessage()));
+            deadLetterCounter.increment();
+            log.error("Событие {} не записано в book_loans и отложено в book_loans_dead_letter", event, error);
+        } catch (RuntimeException e) {
+            log.error("Событие {} не записано ни в book_loans, ни в book_loans_dead_letter: {}", event, e.getMessage(), error);
+        }
+    }
+
+    private void writeRun(LoanEvent.Type type, List<LoanEvent> run) {
+        if (type == LoanEvent.Type.CHECKOUT) {
+            jdbcTemplate.batchUpdate(INSERT_LOAN, run, run.size(), (ps, event) -> {
+                ps.setLong(1, event.bookId());
+                ps.setLong(2, event.personId());
+                ps.setDate(3, new Date(event.occurredAt().getTime()));
+            });
+        } else {
+            jdbcTemplate.batchUpdate(COMPLETE_LOAN, run, run.size(), (ps, event) -> {
+                ps.setDate(1, new Date(event.occurredAt().getTime()));
+                ps.setLong(2, event.bookId());
+                ps.setLong(3, event.personId());
+            });
+        }
+    }
+}
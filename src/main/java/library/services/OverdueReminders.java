@@ -0,0 +1,37 @@
+package library.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import library.events.OverdueLoanEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.SimpleDateFormat;
+
+/**
+ * Напоминания о просроченных книгах. Рассылки по почте в приложении нет, поэтому напоминание пишется
+ * в отдельный лог library.reminders, откуда его забирает доставка (почтовый агент, сборщик логов).
+ * Событие приходит после коммита пачки OverdueScanner, по одному разу на выдачу.
+ */
+@Component
+public class OverdueReminders {
+    private static final Logger reminders = LoggerFactory.getLogger("library.reminders");
+
+    private final Counter sent;
+
+    public OverdueReminders(MeterRegistry meterRegistry) {
+        this.sent = Counter.builder("library.overdue.reminders")
+                .description("Отправленные напоминания о просроченных книгах")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOverdueLoan(OverdueLoanEvent event) {
+        String takenAt = event.takenAt() == null ? "?" : new SimpleDateFormat("yyyy-MM-dd").format(event.takenAt());
+        reminders.info("Читатель {} (ID: {}): верните книгу \"{}\" ({}, ID: {}), выданную {}",
+                event.personName(), event.personId(), event.title(), event.author(), event.bookId(), takenAt);
+        sent.increment();
+    }
+}
@@ -0,0 +1,289 @@
+package library.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import library.dto.OverdueLoanView;
+import library.events.OverdueLoanEvent;
+import library.repositories.BooksRepositories;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ночной поиск просроченных выдач: отмечает книги (overdue_notified_at) и публикует OverdueLoanEvent для напоминаний.
+ * Каталог делится на partitions частей по id; каждая часть - строка job_lease, которую экземпляр приложения
+ * захватывает условным UPDATE, поэтому одну часть обрабатывает один экземпляр. Часть проходится keyset-пачками
+ * по id, каждая пачка - своя короткая транзакция, в которой вместе с отметками сохраняется курсор и продлевается аренда.
+ * Если экземпляр упал, аренда истекает, и другой экземпляр продолжает часть с сохранённого курсора.
+ */
+@Component
+@Lazy(false) // Планировщик должен стартовать сразу, в том числе в профиле startup с lazy-initialization
+@RequiredArgsConstructor
+@Slf4j
+public class OverdueScanner {
+    private static final String JOB_NAME = "overdue-scan";
+
+    // Сроки аренды считаются по часам БД, а не экземпляра: при расхождении часов два экземпляра
+    // не сочтут одну и ту же аренду истёкшей каждый по-своему. CURRENT_TIMESTAMP и колонки с часовым поясом,
+    // а не LOCALTIMESTAMP: пояс сессии драйвер берёт из JVM, и у экземпляров в разных поясах местное время БД
+    // разное. Параметр - длительность аренды в секундах
+    private static final String LEASE_UNTIL = "CURRENT_TIMESTAMP + INTERVAL '1' SECOND * ?";
+
+    // Захват свободной, своей или просроченной аренды; для нового запуска курсор и отметка о завершении сбрасываются
+    private static final String CLAIM =
+            "UPDATE job_lease SET lease_owner = ?, lease_until = " + LEASE_UNTIL + ", " +
+            "cursor_id = CASE WHEN run_id = ? THEN cursor_id ELSE 0 END, " +
+            "finished_at = CASE WHEN run_id = ? THEN finished_at ELSE NULL END, run_id = ? " +
+            "WHERE name = ? AND (lease_owner IS NULL OR lease_owner = ? OR lease_until < CURRENT_TIMESTAMP) " +
+            "AND (run_id <> ? OR finished_at IS NULL)";
+    private static final String CHECKPOINT =
+            "UPDATE job_lease SET cursor_id = ?, lease_until = " + LEASE_UNTIL + " WHERE name = ? AND lease_owner = ?";
+    private static final String FINISH =
+            "UPDATE job_lease SET finished_at = CURRENT_TIMESTAMP, lease_owner = NULL, lease_until = NULL " +
+            "WHERE name = ? AND lease_owner = ?";
+
+    private final BooksRepositories booksRepositories;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final BookCacheEvictor bookCacheEvictor;
+
+    @Value("${library.overdue-scan.enabled:true}")
+    private boolean enabled;
+
+    // Время ежедневного запуска, HH:mm
+    @Value("${library.overdue-scan.run-at:02:00}")
+    private String runAtText;
+
+    // Пояс, в котором отсчитывается run-at; один на все экземпляры, иначе у них разные запуски
+    @Value("${library.overdue-scan.zone:UTC}")
+    private ZoneId zone;
+
+    @Value("${library.overdue-scan.partitions:8}")
+    private int partitions;
+
+    @Value("${library.overdue-scan.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${library.overdue-scan.lease-duration:2m}")
+    private Duration leaseDuration;
+
+    @Value("${library.overdue-scan.poll-interval:1m}")
+    private Duration pollInterval;
+
+    @Value("${library.loans.overdue-term:10d}")
+    private Duration overdueTerm;
+
+    public record ScanReport(int partitions, long chunks, long flagged) {
+    }
+
+    // Итог обработки одной части
+    private record PartitionResult(long chunks, long flagged) {
+    }
+
+    private final String owner = owner();
+    private LocalTime runAt;
+    private TransactionTemplate transactionTemplate;
+    private Counter flaggedCounter;
+    private Timer chunkTimer;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() {
+        runAt = LocalTime.parse(runAtText);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        flaggedCounter = meterRegistry.counter("library.overdue.flagged");
+        chunkTimer = Timer.builder("library.overdue.chunk")
+                .description("Обработка одной пачки поиска просрочек")
+                .register(meterRegistry);
+        for (int partition = 0; partition < partitions; partition++) {
+            createLease(leaseName(partition));
+        }
+        if (!enabled) {
+            return;
+        }
+
+        // Каждый экземпляр периодически пробует захватить незавершённые части текущего запуска:
+        // так подхватываются и новый ночной запуск, и части упавших экземпляров
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overdue-scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = pollInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::pollQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Поиск просрочек: ежедневно в {}, частей {}, экземпляр {}", runAt, partitions, owner);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        // Отдаём свои части сразу, не дожидаясь истечения аренды; курсор сохранён последней пачкой
+        jdbcTemplate.update("UPDATE job_lease SET lease_owner = NULL, lease_until = NULL WHERE lease_owner = ?", owner);
+    }
+
+    // Запуск, к которому относится текущий момент по часам БД: последнее наступившее run-at в поясе zone
+    long currentRunId() {
+        OffsetDateTime dbNow = jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", OffsetDateTime.class);
+        ZonedDateTime now = dbNow.atZoneSameInstant(zone);
+        ZonedDateTime start = now.toLocalDate().atTime(runAt).atZone(zone);
+        if (start.isAfter(now)) {
+            start = now.toLocalDate().minusDays(1).atTime(runAt).atZone(zone);
+        }
+        return start.toInstant().toEpochMilli();
+    }
+
+    /**
+     * Обрабатывает все части запуска runId, которые удалось захватить.
+     * runId - время начала запуска в миллисекундах; просроченными считаются выдачи старше runId - overdue-term.
+     */
+    ScanReport scan(long runId) {
+        int claimed = 0;
+        long chunks = 0;
+        long flagged = 0;
+        for (int partition = 0; partition < partitions; partition++) {
+            String name = leaseName(partition);
+            Long cursor = claim(name, runId);
+            if (cursor == null) {
+                continue;
+            }
+            claimed++;
+            PartitionResult result = scanPartition(name, partition, runId, cursor);
+            chunks += result.chunks();
+            flagged += result.flagged();
+        }
+        return new ScanReport(claimed, chunks, flagged);
+    }
+
+    private void pollQuietly() {
+        try {
+            ScanReport report = scan(currentRunId());
+            if (report.partitions() > 0) {
+                log.info("Поиск просрочек: частей {}, пачек {}, отмечено выдач {}",
+                        report.partitions(), report.chunks(), report.flagged());
+            }
+        } catch (RuntimeException e) {
+            // Незавершённые части останутся за курсором и будут подхвачены следующим опросом
+            log.error("Ошибка поиска просрочек", e);
+        }
+    }
+
+    // Возвращает курсор захваченной части или null, если часть занята или уже обработана в этом запуске
+    private Long claim(String name, long runId) {
+        int claimed = jdbcTemplate.update(CLAIM, owner, leaseSeconds(), runId, runId, runId, name, owner, runId);
+        if (claimed == 0) {
+            return null;
+        }
+        return jdbcTemplate.queryForObject("SELECT cursor_id FROM job_lease WHERE name = ?", Long.class, name);
+    }
+
+    private PartitionResult scanPartition(String name, int partition, long runId, long startCursor) {
+        Date threshold = new Date(runId - overdueTerm.toMillis());
+        long[] cursor = {startCursor};
+        long chunks = 0;
+        long flagged = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            long startNanos = System.nanoTime();
+            Integer chunkFlagged;
+            try {
+                chunkFlagged = transactionTemplate.execute(status -> {
+                    List<OverdueLoanView> loans =
+                            booksRepositories.findUnflaggedOverdue(threshold, cursor[0], partitions, partition, chunkSize);
+                    if (loans.isEmpty()) {
+                        jdbcTemplate.update(FINISH, name, owner);
+                        return null;
+                    }
+
+                    List<Long> ids = loans.stream().map(OverdueLoanView::getBookId).toList();
+                    Date flaggedAt = new Date();
+                    booksRepositories.flagOverdue(ids, threshold, flaggedAt);
+                    // Отмеченные именно сейчас: книги, возвращённые после выборки, напоминания не получат
+                    Set<Long> marked = new HashSet<>(booksRepositories.findIdsFlaggedAt(ids, flaggedAt));
+                    bookCacheEvictor.evict(marked, List.of());
+
+                    long last = ids.get(ids.size() - 1);
+                    if (jdbcTemplate.update(CHECKPOINT, last, leaseSeconds(), name, owner) == 0) {
+                        // Аренду забрал другой экземпляр: откатываем пачку, он обработает её сам
+                        throw new IllegalStateException("Аренда " + name + " потеряна");
+                    }
+                    // События доставляются слушателям после коммита пачки
+                    loans.stream()
+                            .filter(loan -> marked.contains(loan.getBookId()))
+                            .forEach(loan -> eventPublisher.publishEvent(OverdueLoanEvent.of(loan)));
+                    cursor[0] = last;
+                    return marked.size();
+                });
+            } catch (IllegalStateException e) {
+                log.warn("Поиск просрочек: {}, часть продолжит другой экземпляр", e.getMessage());
+                break;
+            } finally {
+                chunkTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+            if (chunkFlagged == null) {
+                break;
+            }
+            chunks++;
+            flagged += chunkFlagged;
+            flaggedCounter.increment(chunkFlagged);
+        }
+        return new PartitionResult(chunks, flagged);
+    }
+
+    private void createLease(String name) {
+        try {
+            jdbcTemplate.update("INSERT INTO job_lease (name, run_id, cursor_id) " +
+                    "SELECT ?, 0, 0 WHERE NOT EXISTS (SELECT 1 FROM job_lease WHERE name = ?)", name, name);
+        } catch (DuplicateKeyException e) {
+            // Строку одновременно создал другой экземпляр
+        }
+    }
+
+    private long leaseSeconds() {
+        return Math.max(1, leaseDuration.toSeconds());
+    }
+
+    // Имя включает число частей: при его изменении запуск начинается с новыми строками аренды
+    private String leaseName(int partition) {
+        return JOB_NAME + "-" + partitions + "-" + partition;
+    }
+
+    private static String owner() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
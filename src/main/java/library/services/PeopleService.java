@@ -1,31 +1,72 @@
 package library.services;
 
+import io.micrometer.core.annotation.Timed;
 import jakarta.persistence.EntityNotFoundException;
-import library.models.Book;
+import library.dto.LoanedBookView;
+import library.dto.OverdueLoanView;
+import library.dto.PersonListItem;
+import library.dto.PersonLookupResult;
+import library.dto.PersonRef;
+import library.events.LoanEvent;
 import library.models.Person;
+import library.repositories.BooksRepositories;
 import library.repositories.PeopleRepositories;
+import library.util.KeysetPage;
+import library.util.OverdueCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.util.Date;
 import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
+@Timed(value = "library.service", histogram = true)
 public class PeopleService {
     private final PeopleRepositories peopleRepositories;
-    private static final long OVERDUE_TERM_MILLIS = 864000000; // 10 дней в миллисекундах
+    private final BooksRepositories booksRepositories;
+    private final CatalogVersion catalogVersion;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PlatformTransactionManager transactionManager;
+    private final BookHoldService bookHoldService;
+    private final BookCacheEvictor bookCacheEvictor;
     private static final Logger logger = LoggerFactory.getLogger(PeopleService.class);
 
-    public List<Person> findAll() {
+    @Value("${library.people.lookup-max-size:50}")
+    private int lookupMaxSize;
+
+    @Value("${library.loans.overdue-term:10d}")
+    private Duration overdueTerm;
+
+    @Value("${library.loans.overdue-page-max-size:100}")
+    private int overduePageMaxSize;
+
+    @Value("${library.people.purge-chunk-size:500}")
+    private int purgeChunkSize;
+
+    public record PurgeReport(long deleted, int chunks, long elapsedMillis) {
+    }
+
+    @Transactional(readOnly = true)
+    public List<PersonListItem> findAll() {
         logger.info("Получение всех пользователей.");
-        return peopleRepositories.findAll();
+        return peopleRepositories.findListItems();
     }
 
+    @Transactional(readOnly = true)
     public Person findOne(long id) {
         logger.info("Поиск пользователя с ID: {}", id);
         return peopleRepositories.findById(id)
@@ -35,6 +76,21 @@ public class PeopleService {
                 });
     }
 
+    // Подсказки для выбора читателя: постранично, по началу имени
+    @Transactional(readOnly = true)
+    public PersonLookupResult lookup(String prefix, int page, int size) {
+        int pageSize = Math.max(1, Math.min(size, lookupMaxSize));
+        String escaped = prefix == null ? "" : prefix.trim()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        logger.info("Поиск читателей по началу имени: '{}', страница {}, размер {}", escaped, page, pageSize);
+
+        Slice<PersonRef> slice = peopleRepositories.findRefsByNamePrefix(escaped, PageRequest.of(Math.max(page, 0), pageSize));
+        return new PersonLookupResult(slice.getContent(), slice.getNumber(), slice.hasNext());
+    }
+
+    @Transactional(readOnly = true)
     public Person findOne(String name) {
         logger.info("Поиск пользователя с именем: {}", name);
         return peopleRepositories.findByName(name);
@@ -44,63 +100,143 @@ public class PeopleService {
     public void save(Person person) {
         logger.info("Сохранение пользователя: {}", person);
         peopleRepositories.save(person);
+        catalogVersion.bump();
     }
 
     @Transactional
     public void update(long id, Person personUpdated) {
-        if (!peopleRepositories.existsById(id)) {
-            logger.warn("Попытка обновления несуществующего пользователя с ID: {}", id);
-            throw new EntityNotFoundException("Пользователь не найден");
+        update(id, personUpdated, null);
+    }
+
+    // expectedVersion - версия из If-Match; null означает обновление без проверки
+    @Transactional
+    public Person update(long id, Person personUpdated, Long expectedVersion) {
+        Person person = peopleRepositories.findById(id)
+                .orElseThrow(() -> {
+                    logger.warn("Попытка обновления несуществующего пользователя с ID: {}", id);
+                    return new EntityNotFoundException("Пользователь не найден");
+                });
+        if (expectedVersion != null && person.getVersion() != expectedVersion) {
+            logger.warn("Пользователь с ID: {} изменён: ожидалась версия {}, текущая {}", id, expectedVersion, person.getVersion());
+            throw new OptimisticLockingFailureException("Пользователь изменён другим пользователем");
         }
         logger.info("Обновление пользователя с ID: {}", id);
-        personUpdated.setId(id);
-        peopleRepositories.save(personUpdated);
+        // Форма не передаёт версию и книги, поэтому меняем только поля загруженной сущности
+        person.setName(personUpdated.getName());
+        person.setYearOfBirth(personUpdated.getYearOfBirth());
+        catalogVersion.bump();
         logger.info("Пользователь с ID: {} обновлен.", id);
+        return person;
     }
 
 
     @Transactional
     public void delete(long id) {
-        if (!peopleRepositories.existsById(id)) {
-            logger.warn("Попытка удаления несуществующего пользователя с ID: {}", id);
-            throw new EntityNotFoundException("Пользователь не найден");
-        }
-        logger.info("Удаление пользователя с ID: {}", id);
-        peopleRepositories.deleteById(id);
-        logger.info("Пользователь с ID: {} удален.", id);
+        deletePerson(id);
     }
 
 
-    @Transactional
-    public List<Book> getBooksByPersonId(long id) {
-        Person person = peopleRepositories.findById(id)
-                .orElseThrow(() -> {
-                    logger.error("Пользователь с ID: {} не найден при попытке получить книги.", id);
-                    return new EntityNotFoundException("Пользователь не найден");
-                });
+    @Transactional(readOnly = true)
+    public List<LoanedBookView> getBooksByPersonId(long id) {
+        if (!peopleRepositories.existsById(id)) {
+            logger.error("Пользователь с ID: {} не найден при попытке получить книги.", id);
+            throw new EntityNotFoundException("Пользователь не найден");
+        }
 
-        long nowMillis = System.currentTimeMillis();
         logger.info("Получение книг для пользователя с ID: {}", id);
+        List<LoanedBookView> books = booksRepositories.findLoansByPersonId(id, overdueThreshold());
+        logger.info("Книги для пользователя с ID: {} получены.", id);
+        return books;
+    }
 
-        for (Book book : person.getBooks()) {
-            long diffMillis = nowMillis - book.getTakenAt().getTime();
-            book.setOverdue(diffMillis > OVERDUE_TERM_MILLIS);
+    // Просроченные выдачи всех читателей, страница за страницей без загрузки сущностей
+    @Transactional(readOnly = true)
+    public KeysetPage<OverdueLoanView> findOverdue(String after, int size) {
+        int pageSize = Math.max(1, Math.min(size, overduePageMaxSize));
+        logger.info("Получение просроченных выдач: after = {}, размер = {}", after, pageSize);
+
+        Date threshold = overdueThreshold();
+        List<OverdueLoanView> rows;
+        if (after == null) {
+            rows = booksRepositories.findOverdueFirstPage(threshold, pageSize + 1);
+        } else {
+            OverdueCursor cursor = OverdueCursor.decode(after);
+            rows = booksRepositories.findOverdueAfter(threshold, new Date(cursor.takenAtMillis()), cursor.bookId(), pageSize + 1);
         }
 
-        logger.info("Книги для пользователя с ID: {} получены.", id);
-        return person.getBooks();
+        boolean hasNext = rows.size() > pageSize;
+        List<OverdueLoanView> items = hasNext ? rows.subList(0, pageSize) : rows;
+        return new KeysetPage<>(items, hasNext ? OverdueCursor.of(items.get(items.size() - 1)).encode() : null, null);
+    }
+
+    // Книга просрочена, если выдана раньше этого момента
+    private Date overdueThreshold() {
+        return new Date(System.currentTimeMillis() - overdueTerm.toMillis());
     }
 
+    /**
+     * Удаляет читателя вместе с возвратом всех его книг в одной транзакции:
+     * книги освобождаются одним UPDATE, без загрузки коллекции Person.books.
+     * Строка читателя блокируется первой, поэтому новая выдача ему не может проскочить между выборкой
+     * его книг и их возвратом - каждая освобождённая книга получает LoanEvent.returned.
+     */
+    @Transactional
     public void deletePerson(Long personId) {
         logger.info("Попытка удалить пользователя с ID: {}", personId);
-        Person person = peopleRepositories.findById(personId)
-                .orElseThrow(() -> {
-                    logger.error("Пользователь с ID: {} не найден при удалении.", personId);
-                    return new EntityNotFoundException("Пользователь не найден");
-                });
+        if (peopleRepositories.lockById(personId).isEmpty()) {
+            logger.error("Пользователь с ID: {} не найден при удалении.", personId);
+            throw new EntityNotFoundException("Пользователь не найден");
+        }
 
-        person.releaseBooks(); // Освобождаем книги пользователя
-        peopleRepositories.delete(person); // Удаляем пользователя
+        bookHoldService.cancelAllFor(personId); // Снимаем заявки пользователя до передачи его книг по очередям
+        List<Long> bookIds = booksRepositories.lockIdsByOwnerId(personId);
+        if (!bookIds.isEmpty()) {
+            int released = booksRepositories.releaseAll(bookIds); // Освобождаем книги пользователя
+            bookCacheEvictor.evict(bookIds, List.of(personId));
+            bookIds.forEach(bookId -> eventPublisher.publishEvent(LoanEvent.returned(bookId, personId)));
+            logger.info("Освобождено книг пользователя с ID: {}: {}", personId, released);
+            bookHoldService.handOff(bookIds);
+        }
+        peopleRepositories.deleteById(personId); // Удаляем пользователя
+        catalogVersion.bump();
         logger.info("Пользователь с ID: {} успешно удален.", personId);
     }
+
+    /**
+     * Удаляет читателей без книг на руках, которые не менялись и не брали книг дольше inactiveFor.
+     * Работает пачками по purge-chunk-size: каждая пачка - своя короткая транзакция, блокировки
+     * и контекст персистентности не копятся. Кандидаты перебираются по id, поэтому чистку можно прервать и повторить.
+     */
+    public PurgeReport purgeInactive(Duration inactiveFor) {
+        Date cutoff = new Date(System.currentTimeMillis() - inactiveFor.toMillis());
+        logger.info("Чистка неактивных читателей: без активности с {}, размер пачки {}", cutoff, purgeChunkSize);
+        long startMillis = System.currentTimeMillis();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        long deleted = 0;
+        int chunks = 0;
+        long[] afterId = {0}; // Последний просмотренный id: следующая пачка начинается после него
+        while (true) {
+            Integer chunkDeleted = transactionTemplate.execute(status -> {
+                List<Long> ids = peopleRepositories.findInactiveIds(afterId[0], cutoff, purgeChunkSize);
+                if (ids.isEmpty()) {
+                    return null;
+                }
+                afterId[0] = ids.get(ids.size() - 1);
+                // Блокировка ждёт параллельные выдачи и заявки этим читателям, и удаление уже видит их строки
+                peopleRepositories.lockAllByIdIn(ids);
+                return peopleRepositories.deleteUnloanedByIdIn(ids);
+            });
+            if (chunkDeleted == null) {
+                break;
+            }
+            deleted += chunkDeleted;
+            chunks++;
+            catalogVersion.bump();
+        }
+
+        PurgeReport report = new PurgeReport(deleted, chunks, System.currentTimeMillis() - startMillis);
+        logger.info("Чистка неактивных читателей завершена: удалено {}, пачек {}, {} мс", deleted, chunks, report.elapsedMillis());
+        return report;
+    }
 }
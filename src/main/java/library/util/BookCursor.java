@@ -0,0 +1,49 @@
+package library.util;
+
+import library.dto.BookListItem;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор для keyset-пагинации каталога.
+ * Хранит ключ последней (или первой) книги страницы: (yearOfRelease, id) при сортировке по году или только id.
+ */
+public record BookCursor(boolean sortByYear, int yearOfRelease, long id) {
+
+    // Курсор "до начала каталога": любая книга идёт после него
+    public static BookCursor start(boolean sortByYear) {
+        return new BookCursor(sortByYear, Integer.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    public static BookCursor of(BookListItem book, boolean sortByYear) {
+        return new BookCursor(sortByYear, book.getYearOfRelease(), book.getId());
+    }
+
+    public String encode() {
+        String raw = sortByYear ? "y:" + yearOfRelease + ":" + id : "i:" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static BookCursor decode(String token, boolean sortByYear) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор: " + token, e);
+        }
+
+        String[] parts = raw.split(":");
+        try {
+            if (sortByYear && parts.length == 3 && parts[0].equals("y")) {
+                return new BookCursor(true, Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+            }
+            if (!sortByYear && parts.length == 2 && parts[0].equals("i")) {
+                return new BookCursor(false, Integer.MIN_VALUE, Long.parseLong(parts[1]));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный курсор: " + token, e);
+        }
+        throw new IllegalArgumentException("Курсор не соответствует режиму сортировки: " + token);
+    }
+}
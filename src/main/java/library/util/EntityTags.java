@@ -0,0 +1,51 @@
+package library.util;
+
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Instant;
+
+/**
+ * ETag и If-Match для JSON API. ETag сущности - её версия (@Version) в кавычках, поэтому проверка
+ * условного GET не требует ни сериализации ответа, ни хеширования тела.
+ */
+public final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    public static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Проверяет If-None-Match / If-Modified-Since. Возвращает true, если клиенту уже можно ответить 304;
+     * в обоих случаях выставляет заголовки ETag и Last-Modified.
+     */
+    public static boolean checkNotModified(WebRequest request, long version, Instant updatedAt) {
+        return updatedAt == null
+                ? request.checkNotModified(of(version))
+                : request.checkNotModified(of(version), updatedAt.toEpochMilli());
+    }
+
+    /**
+     * Ожидаемая версия из заголовка If-Match: null, если заголовка нет или он равен "*".
+     * Слабые и составные значения не подходят для проверки записи.
+     */
+    public static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/") || value.contains(",")) {
+            throw new IllegalArgumentException("If-Match должен содержать один сильный ETag: " + ifMatch);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный If-Match: " + ifMatch, e);
+        }
+    }
+}
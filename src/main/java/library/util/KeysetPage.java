@@ -0,0 +1,15 @@
+package library.util;
+
+import java.util.List;
+
+// Страница keyset-пагинации: элементы и курсоры соседних страниц (null, если страницы нет)
+public record KeysetPage<T>(List<T> items, String nextCursor, String prevCursor) {
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean hasPrev() {
+        return prevCursor != null;
+    }
+}
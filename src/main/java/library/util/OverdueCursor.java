@@ -0,0 +1,33 @@
+package library.util;
+
+import library.dto.OverdueLoanView;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор для списка просроченных выдач: ключ (taken_at, id) последней строки страницы.
+ */
+public record OverdueCursor(long takenAtMillis, long bookId) {
+
+    public static OverdueCursor of(OverdueLoanView loan) {
+        return new OverdueCursor(loan.getTakenAt().getTime(), loan.getBookId());
+    }
+
+    public String encode() {
+        String raw = takenAtMillis + ":" + bookId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static OverdueCursor decode(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (parts.length == 2) {
+                return new OverdueCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор: " + token, e);
+        }
+        throw new IllegalArgumentException("Некорректный курсор: " + token);
+    }
+}
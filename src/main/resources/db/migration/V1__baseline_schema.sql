@@ -0,0 +1,30 @@
+-- Исходная схема библиотеки в том виде, в каком её создавал Hibernate (ddl-auto: update)
+-- по сущностям Person, Book и BookLoan. На существующей базе эта миграция не выполняется:
+-- Flyway помечает её выполненной (baseline-on-migrate), всё последующее - в V2 и дальше.
+
+CREATE TABLE person
+(
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name          VARCHAR(255),
+    year_of_birth INTEGER NOT NULL
+);
+
+CREATE TABLE book
+(
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title           VARCHAR(255),
+    year_of_release INTEGER NOT NULL,
+    author          VARCHAR(255),
+    person_id       BIGINT REFERENCES person (id),
+    taken_at        TIMESTAMP(6)
+);
+
+-- История выдач без внешних ключей: она переживает удаление книг и читателей
+CREATE TABLE book_loans
+(
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    book_id     BIGINT NOT NULL,
+    person_id   BIGINT NOT NULL,
+    loan_date   DATE   NOT NULL,
+    return_date DATE
+);
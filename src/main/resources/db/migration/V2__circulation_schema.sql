@@ -0,0 +1,38 @@
+-- Объекты, которых не было в исходной схеме: выполняется и на новой базе, и на базе после baseline.
+
+-- Book.id берётся из book_seq с шагом 50 (pooled-оптимизатор Hibernate) вместо IDENTITY.
+-- Старые базы могли получить id через BIGSERIAL (V1__createDB.sql) - снимаем и его значение по умолчанию.
+CREATE SEQUENCE IF NOT EXISTS book_seq START WITH 1 INCREMENT BY 50;
+ALTER TABLE book ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE book ALTER COLUMN id DROP DEFAULT;
+-- Сдвигаем последовательность за уже выданные id
+SELECT setval('book_seq', GREATEST((SELECT COALESCE(MAX(id), 1) FROM book), (SELECT last_value FROM book_seq)));
+
+-- Оптимистическая блокировка и отметка изменения для кэша
+ALTER TABLE person ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE person ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP(6) WITH TIME ZONE;
+ALTER TABLE book ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE book ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP(6) WITH TIME ZONE;
+
+-- Отметка о разосланном напоминании по просрочке (OverdueScanner)
+ALTER TABLE book ADD COLUMN IF NOT EXISTS overdue_notified_at TIMESTAMP(6);
+
+-- Предрассчитанная статистика выдач (CirculationStats)
+CREATE TABLE IF NOT EXISTS circulation_stats
+(
+    kind     VARCHAR(16) NOT NULL,
+    stat_key BIGINT      NOT NULL,
+    total    BIGINT      NOT NULL,
+    PRIMARY KEY (kind, stat_key)
+);
+
+-- Аренда фоновых задач между экземплярами приложения
+CREATE TABLE IF NOT EXISTS job_lease
+(
+    name        VARCHAR(64) PRIMARY KEY,
+    lease_owner VARCHAR(128),
+    lease_until TIMESTAMP(6) WITH TIME ZONE,
+    run_id      BIGINT NOT NULL,
+    cursor_id   BIGINT NOT NULL,
+    finished_at TIMESTAMP(6) WITH TIME ZONE
+);
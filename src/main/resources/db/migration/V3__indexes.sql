@@ -0,0 +1,25 @@
+-- Индексы, которые раньше выполнялись из db/schema.sql при каждом запуске.
+-- Команды идемпотентны: на базе после baseline часть индексов уже есть.
+
+-- Keyset-пагинация каталога по (year_of_release, id)
+CREATE INDEX IF NOT EXISTS idx_book_year_id ON book (year_of_release, id);
+
+-- Подсказки по читателям: LOWER(name) LIKE 'префикс%'
+CREATE INDEX IF NOT EXISTS idx_person_name_lower ON person (lower(name) text_pattern_ops);
+
+-- Просрочки: только выданные книги, упорядочены по дате выдачи (частичный индекс)
+CREATE INDEX IF NOT EXISTS idx_book_taken_at_loaned ON book (taken_at, id) WHERE person_id IS NOT NULL;
+
+-- Выдачи читателя по датам: проверка активности при чистке неактивных читателей
+CREATE INDEX IF NOT EXISTS idx_book_loans_person_dates ON book_loans (person_id, loan_date, return_date);
+
+-- Книги читателя: освобождение при удалении и проверка "нет книг на руках"
+CREATE INDEX IF NOT EXISTS idx_book_person_id ON book (person_id);
+
+-- Фоновый поиск просрочек: выданные и ещё не отмеченные книги в порядке id (частичный индекс)
+CREATE INDEX IF NOT EXISTS idx_book_overdue_unflagged ON book (id) WHERE person_id IS NOT NULL AND overdue_notified_at IS NULL;
+
+-- Фильтры каталога (BookFilterRepositoryImpl): автор с диапазоном лет и keyset по (year_of_release, id),
+-- только свободные книги - частичный индекс в том же порядке
+CREATE INDEX IF NOT EXISTS idx_book_author_year_id ON book (author, year_of_release, id);
+CREATE INDEX IF NOT EXISTS idx_book_available_year_id ON book (year_of_release, id) WHERE person_id IS NULL;
@@ -0,0 +1,16 @@
+-- Очереди заявок на выданные книги. Порядок в очереди - порядок id внутри книги;
+-- заявки удаляются вместе с книгой или читателем
+CREATE TABLE book_hold
+(
+    id        BIGSERIAL PRIMARY KEY,
+    book_id   BIGINT       NOT NULL REFERENCES book (id) ON DELETE CASCADE,
+    person_id BIGINT       NOT NULL REFERENCES person (id) ON DELETE CASCADE,
+    placed_at TIMESTAMP(6) NOT NULL,
+    CONSTRAINT uk_book_hold_book_person UNIQUE (book_id, person_id)
+);
+
+-- Голова очереди книги и перечитывание очереди целиком
+CREATE INDEX idx_book_hold_book_id ON book_hold (book_id, id);
+
+-- Заявки читателя: снятие при удалении и проверка активности при чистке
+CREATE INDEX idx_book_hold_person_id ON book_hold (person_id);
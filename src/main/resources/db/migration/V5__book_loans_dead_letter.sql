@@ -0,0 +1,11 @@
+-- События истории выдач, которые БД отвергла при записи (см. LoanHistoryWriter)
+CREATE TABLE book_loans_dead_letter
+(
+    id          BIGSERIAL PRIMARY KEY,
+    event_type  VARCHAR(16)  NOT NULL,
+    book_id     BIGINT       NOT NULL,
+    person_id   BIGINT       NOT NULL,
+    occurred_at TIMESTAMP(6) NOT NULL,
+    error       TEXT,
+    failed_at   TIMESTAMP(6) NOT NULL
+);
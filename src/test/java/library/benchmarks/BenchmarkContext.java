@@ -0,0 +1,103 @@
+package library.benchmarks;
+
+import library.SpringProjectApplication;
+import library.services.BookSearchIndexer;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Поднимает JPA-слой приложения на встроенной H2 (профиль bench) и заполняет каталог.
+ * Каждый форк JMH получает собственный контекст; данные вставляются до построения поискового индекса.
+ *
+ * Размеры: catalogSize книг, catalogSize / 10 читателей, каждая пятая книга выдана,
+ * половина выданных просрочена. Книги с id > catalogSize - RESERVED_FREE_BOOKS всегда свободны
+ * и используются бенчмарками выдачи/возврата.
+ */
+public final class BenchmarkContext {
+    public static final int RESERVED_FREE_BOOKS = 1_000;
+    private static final int BATCH = 1_000;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static ConfigurableApplicationContext context;
+
+    private BenchmarkContext() {
+    }
+
+    public static synchronized ConfigurableApplicationContext start(int catalogSize) {
+        return start(catalogSize, WebApplicationType.NONE);
+    }
+
+    // Полноценное веб-приложение на случайном порту (local.server.port) для нагрузочного теста
+    public static synchronized ConfigurableApplicationContext startWeb(int catalogSize) {
+        return start(catalogSize, WebApplicationType.SERVLET);
+    }
+
+    private static ConfigurableApplicationContext start(int catalogSize, WebApplicationType webApplicationType) {
+        if (context != null) {
+            return context;
+        }
+        context = new SpringApplicationBuilder(SpringProjectApplication.class)
+                .profiles("bench")
+                .web(webApplicationType)
+                .properties("server.port=0")
+                .listeners(event -> {
+                    if (event instanceof ApplicationStartedEvent started) {
+                        seed(started.getApplicationContext().getBean(JdbcTemplate.class), catalogSize);
+                    }
+                })
+                .run();
+
+        BookSearchIndexer indexer = context.getBean(BookSearchIndexer.class);
+        while (!indexer.isReady()) {
+            Thread.onSpinWait();
+        }
+        return context;
+    }
+
+    public static synchronized void stop() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    public static int readers(int catalogSize) {
+        return Math.max(1, catalogSize / 10);
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int catalogSize) {
+        int readers = readers(catalogSize);
+        List<Object[]> people = new ArrayList<>(BATCH);
+        for (int id = 1; id <= readers; id++) {
+            people.add(new Object[]{id, "Читатель " + id, 1950 + id % 60});
+            if (people.size() == BATCH || id == readers) {
+                jdbcTemplate.batchUpdate("INSERT INTO person (id, name, year_of_birth) VALUES (?, ?, ?)", people);
+                people.clear();
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        int lastLoanable = catalogSize - RESERVED_FREE_BOOKS;
+        List<Object[]> books = new ArrayList<>(BATCH);
+        for (int id = 1; id <= catalogSize; id++) {
+            boolean taken = id % 5 == 0 && id <= lastLoanable;
+            Long personId = taken ? (long) (id % readers) + 1 : null;
+            Timestamp takenAt = taken ? new Timestamp(now - (id % 20) * DAY_MILLIS) : null;
+            books.add(new Object[]{id, "Книга " + id, "Автор " + id % 5000, 1900 + id % 124, personId, takenAt});
+            if (books.size() == BATCH || id == catalogSize) {
+                jdbcTemplate.batchUpdate("INSERT INTO book (id, title, author, year_of_release, person_id, taken_at) " +
+                        "VALUES (?, ?, ?, ?, ?, ?)", books);
+                books.clear();
+            }
+        }
+        // Новые книги из book_seq не должны пересечься с заполненными id (pooled выдаёт диапазон ниже значения)
+        jdbcTemplate.execute("ALTER SEQUENCE book_seq RESTART WITH " + (catalogSize + 100));
+    }
+}
@@ -0,0 +1,35 @@
+package library.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запускает JMH-бенчмарки пакета library.benchmarks и сохраняет результаты в JSON,
+ * чтобы сравнивать их между коммитами (например, в jmh.morethan.io или скриптом).
+ *
+ * Системные свойства:
+ * -Dbenchmark.include=ServiceBenchmarks   регулярное выражение для выбора бенчмарков
+ * -Dbenchmark.books=10000,100000          размеры каталога
+ * -Dbenchmark.result=target/jmh-result.json
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include("library\\.benchmarks\\." + System.getProperty("benchmark.include", "ServiceBenchmarks|BookSearchBenchmark|BulkLoanBenchmark"))
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty("benchmark.result", "target/jmh-result.json"));
+
+        String books = System.getProperty("benchmark.books");
+        if (books != null) {
+            options.param("catalogSize", books.split(","));
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,79 @@
+package library.benchmarks;
+
+import library.repositories.BooksRepositories;
+import library.services.BookSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск книг: индекс в памяти против запроса findByTitleStartingWith.
+ * Каталог заполняет BenchmarkContext, индекс строится из тех же данных.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookSearchBenchmark {
+
+    @Param({"100000"})
+    private int catalogSize;
+
+    @Param({"Книга 12", "Автор 7", "ига 99"})
+    private String query;
+
+    private BooksRepositories booksRepositories;
+    private BookSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConfigurableApplicationContext context = BenchmarkContext.start(catalogSize);
+        booksRepositories = context.getBean(BooksRepositories.class);
+
+        index = new BookSearchIndex();
+        context.getBean(JdbcTemplate.class).query("SELECT id, title, author FROM book", rs -> {
+            index.put(rs.getLong("id"), rs.getString("title"), rs.getString("author"));
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkContext.stop();
+    }
+
+    @Benchmark
+    public List<Long> inMemoryIndex() {
+        return index.search(query, 50);
+    }
+
+    @Benchmark
+    public Object repositoryQuery() {
+        return booksRepositories.findByTitleStartingWith(query);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BookSearchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,74 @@
+package library.benchmarks;
+
+import library.services.BooksService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выдача и возврат пачки книг: массовые операции BooksService против цикла одиночных assign/release.
+ * Время массовой операции должно почти не зависеть от batchSize. Книги берутся из зарезервированного свободного диапазона.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkLoanBenchmark {
+    private static final int CATALOG_SIZE = 10_000;
+
+    @Param({"1", "10", "50", "200"})
+    private int batchSize;
+
+    private BooksService booksService;
+    private List<Long> bookIds;
+    private long personId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConfigurableApplicationContext context = BenchmarkContext.start(CATALOG_SIZE);
+        booksService = context.getBean(BooksService.class);
+        personId = 1;
+        bookIds = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            bookIds.add((long) (CATALOG_SIZE - i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkContext.stop();
+    }
+
+    @Benchmark
+    public void bulkAssignAndRelease() {
+        booksService.assignAll(bookIds, personId);
+        booksService.releaseAll(bookIds, personId);
+    }
+
+    @Benchmark
+    public void singleAssignAndReleaseLoop() {
+        for (Long bookId : bookIds) {
+            booksService.assign(bookId, personId);
+        }
+        for (Long bookId : bookIds) {
+            booksService.release(bookId, personId);
+        }
+    }
+}
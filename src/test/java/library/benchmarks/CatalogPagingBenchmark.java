@@ -0,0 +1,78 @@
+package library.benchmarks;
+
+import library.SpringProjectApplication;
+import library.services.BooksService;
+import library.util.BookCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Сравнение OFFSET- и keyset-пагинации на большом каталоге.
+ * Запуск: mvn test -Dbenchmark=true -Dtest=CatalogPagingBenchmark [-Dbenchmark.books=1000000]
+ */
+@SpringBootTest(classes = SpringProjectApplication.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Slf4j
+class CatalogPagingBenchmark {
+    private static final int CATALOG_SIZE = Integer.getInteger("benchmark.books", 1_000_000);
+    private static final int PAGE_SIZE = 20;
+    private static final int ITERATIONS = 50;
+    private static final int[] DEPTHS = {0, 1_000, 10_000, 49_000};
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void announce() {
+        log.info("Бенчмарк пагинации: каталог {} книг, страница {}", CATALOG_SIZE, PAGE_SIZE);
+    }
+
+    @Test
+    void offsetVersusKeyset() {
+        seedCatalog();
+
+        log.info(String.format("%-8s %14s %14s", "page", "offset, мкс", "keyset, мкс"));
+        for (int depth : DEPTHS) {
+            int page = depth;
+            // Курсор, указывающий на ту же страницу, что и OFFSET page * PAGE_SIZE
+            Long lastIdBefore = page == 0 ? null : jdbcTemplate.queryForObject(
+                    "SELECT id FROM book ORDER BY id OFFSET ? LIMIT 1", Long.class, page * PAGE_SIZE - 1);
+            String after = lastIdBefore == null ? null : new BookCursor(false, Integer.MIN_VALUE, lastIdBefore).encode();
+
+            long offsetMicros = measure(() -> booksService.findAll(page, PAGE_SIZE, false));
+            long keysetMicros = measure(() -> booksService.findPage(after, null, PAGE_SIZE, false));
+            log.info(String.format("%-8d %14d %14d", page, offsetMicros, keysetMicros));
+        }
+    }
+
+    private long measure(Runnable query) {
+        for (int i = 0; i < ITERATIONS / 5; i++) {
+            query.run(); // Прогрев
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            query.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS / 1_000;
+    }
+
+    private void seedCatalog() {
+        Integer existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM book", Integer.class);
+        int missing = CATALOG_SIZE - (existing == null ? 0 : existing);
+        if (missing <= 0) {
+            return;
+        }
+        log.info("Заполнение каталога: добавляется {} книг", missing);
+        jdbcTemplate.update("INSERT INTO book (id, title, author, year_of_release) " +
+                "SELECT nextval('book_seq'), 'Книга ' || g, 'Автор ' || (g % 5000), 1900 + g % 124 FROM generate_series(1, ?) g", missing);
+        jdbcTemplate.execute("ANALYZE book");
+    }
+}
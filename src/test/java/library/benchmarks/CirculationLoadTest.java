@@ -0,0 +1,287 @@
+package library.benchmarks;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сквозной нагрузочный тест: приложение на случайном порту со встроенной БД, несколько
+ * "библиотекарей" параллельно ходят по /book, /book/{id}, /book/search, /book/{id}/assign и /people/{id},
+ * конкурируя за небольшой набор популярных книг. В конце печатается отчёт p50/p99/p999, пропускная
+ * способность и доля ошибок, и тест падает, если нарушен хотя бы один порог SLO.
+ *
+ * Запуск: mvn test -Dloadtest=true -Dtest=CirculationLoadTest
+ * Параметры (системные свойства, значения по умолчанию в скобках):
+ * loadtest.books (10000), loadtest.clerks (32), loadtest.hotBooks (20), loadtest.warmup (5 c), loadtest.duration (30 c),
+ * loadtest.mix - веса операций list,show,search,checkout,person (30,30,15,15,10),
+ * loadtest.slo.p50Ms (25), loadtest.slo.p99Ms (250), loadtest.slo.p999Ms (1000),
+ * loadtest.slo.maxErrorRate (0.01), loadtest.slo.minThroughput (200 запросов/с).
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@Slf4j
+class CirculationLoadTest {
+    private static final int BOOKS = Integer.getInteger("loadtest.books", 10_000);
+    private static final int CLERKS = Integer.getInteger("loadtest.clerks", 32);
+    private static final int HOT_BOOKS = Integer.getInteger("loadtest.hotBooks", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup", 5);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 30);
+    private static final int[] MIX = Arrays.stream(System.getProperty("loadtest.mix", "30,30,15,15,10").split(","))
+            .mapToInt(weight -> Integer.parseInt(weight.trim()))
+            .toArray();
+
+    private static final double SLO_P50_MS = Double.parseDouble(System.getProperty("loadtest.slo.p50Ms", "25"));
+    private static final double SLO_P99_MS = Double.parseDouble(System.getProperty("loadtest.slo.p99Ms", "250"));
+    private static final double SLO_P999_MS = Double.parseDouble(System.getProperty("loadtest.slo.p999Ms", "1000"));
+    private static final double SLO_MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.slo.maxErrorRate", "0.01"));
+    private static final double SLO_MIN_THROUGHPUT = Double.parseDouble(System.getProperty("loadtest.slo.minThroughput", "200"));
+
+    private enum Operation {
+        LIST, SHOW, SEARCH, CHECKOUT, PERSON
+    }
+
+    // Замеры одного потока; объединяются после завершения прогона
+    private static final class Recorder {
+        private final Map<Operation, long[]> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Integer> counts = new EnumMap<>(Operation.class);
+        private final Map<Operation, Integer> errors = new EnumMap<>(Operation.class);
+        private int conflicts;
+
+        void record(Operation operation, long nanos, boolean error) {
+            long[] values = latencies.computeIfAbsent(operation, op -> new long[1024]);
+            int count = counts.getOrDefault(operation, 0);
+            if (count == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+                latencies.put(operation, values);
+            }
+            values[count] = nanos;
+            counts.put(operation, count + 1);
+            if (error) {
+                errors.merge(operation, 1, Integer::sum);
+            }
+        }
+    }
+
+    private record Stats(String name, int count, int errors, double throughput,
+                         double p50Ms, double p99Ms, double p999Ms) {
+
+        double errorRate() {
+            return count == 0 ? 0 : (double) errors / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-9s %8d %9.1f %8.2f%% %9.2f %9.2f %9.2f",
+                    name, count, throughput, errorRate() * 100, p50Ms, p99Ms, p999Ms);
+        }
+    }
+
+    private static String baseUrl;
+    private static int readers;
+    private static HttpClient client;
+
+    @BeforeAll
+    static void startApplication() {
+        String port = BenchmarkContext.startWeb(BOOKS).getEnvironment().getProperty("local.server.port");
+        baseUrl = "http://localhost:" + port;
+        readers = BenchmarkContext.readers(BOOKS);
+        client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @AfterAll
+    static void stopApplication() {
+        BenchmarkContext.stop();
+    }
+
+    @Test
+    void circulationMeetsSlo() throws Exception {
+        runClerks(WARMUP_SECONDS);
+        log.info("Прогрев завершён, основной прогон {} c, {} библиотекарей", DURATION_SECONDS, CLERKS);
+
+        long startNanos = System.nanoTime();
+        List<Recorder> recorders = runClerks(DURATION_SECONDS);
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+
+        List<Stats> report = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            report.add(stats(operation.name(), recorders, List.of(operation), seconds));
+        }
+        Stats total = stats("TOTAL", recorders, List.of(Operation.values()), seconds);
+        report.add(total);
+        int conflicts = recorders.stream().mapToInt(recorder -> recorder.conflicts).sum();
+
+        StringBuilder text = new StringBuilder(String.format("%n%-9s %8s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms"));
+        report.forEach(line -> text.append(line).append(System.lineSeparator()));
+        text.append("Конфликты выдачи (409, ожидаемы при конкуренции): ").append(conflicts);
+        log.info(text.toString());
+
+        List<String> breaches = new ArrayList<>();
+        check(breaches, "p50", total.p50Ms(), SLO_P50_MS);
+        check(breaches, "p99", total.p99Ms(), SLO_P99_MS);
+        check(breaches, "p999", total.p999Ms(), SLO_P999_MS);
+        check(breaches, "error rate", total.errorRate(), SLO_MAX_ERROR_RATE);
+        if (total.throughput() < SLO_MIN_THROUGHPUT) {
+            breaches.add(String.format("throughput %.1f req/s < %.1f", total.throughput(), SLO_MIN_THROUGHPUT));
+        }
+        assertTrue(breaches.isEmpty(), "Нарушены пороги SLO: " + breaches);
+    }
+
+    private List<Recorder> runClerks(int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Recorder> recorders = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(CLERKS);
+        ExecutorService executor = Executors.newFixedThreadPool(CLERKS);
+        try {
+            for (int clerk = 0; clerk < CLERKS; clerk++) {
+                Recorder recorder = new Recorder();
+                recorders.add(recorder);
+                long personId = 1 + clerk % readers;
+                executor.execute(() -> {
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            perform(pick(), personId, recorder);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        return recorders;
+    }
+
+    private static Operation pick() {
+        int total = Arrays.stream(MIX).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        Operation[] operations = Operation.values();
+        for (int i = 0; i < operations.length; i++) {
+            roll -= MIX[i];
+            if (roll < 0) {
+                return operations[i];
+            }
+        }
+        return Operation.LIST;
+    }
+
+    private void perform(Operation operation, long personId, Recorder recorder) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (operation) {
+            case LIST -> timed(operation, recorder, get("/book?sort_by_year=" + random.nextBoolean()));
+            case SHOW -> timed(operation, recorder, get("/book/" + (1 + random.nextInt(BOOKS))));
+            case SEARCH -> timed(operation, recorder, form("POST", "/book/search", "query=" + encode("Книга " + random.nextInt(1, 1000))));
+            case PERSON -> timed(operation, recorder, get("/people/" + (1 + random.nextInt(readers))));
+            case CHECKOUT -> {
+                // Популярные книги лежат в зарезервированном свободном диапазоне, за них и конкурируют
+                long bookId = BOOKS - random.nextInt(HOT_BOOKS);
+                int status = timed(operation, recorder, form("PATCH", "/book/" + bookId + "/assign", "id=" + personId));
+                if (status == 409) {
+                    recorder.conflicts++;
+                } else if (status / 100 == 3) {
+                    timed(operation, recorder, form("PATCH", "/book/" + bookId + "/release/" + personId, ""));
+                }
+            }
+        }
+    }
+
+    private int timed(Operation operation, Recorder recorder, HttpRequest request) {
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = -1;
+        }
+        // 409 при выдаче - ожидаемый результат конкуренции, а не ошибка
+        boolean error = status < 0 || (status >= 400 && status != 409);
+        recorder.record(operation, System.nanoTime() - start, error);
+        return status;
+    }
+
+    private static HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().timeout(Duration.ofSeconds(10)).build();
+    }
+
+    private static HttpRequest form(String method, String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static Stats stats(String name, List<Recorder> recorders, List<Operation> operations, double seconds) {
+        int count = 0;
+        int errors = 0;
+        for (Recorder recorder : recorders) {
+            for (Operation operation : operations) {
+                count += recorder.counts.getOrDefault(operation, 0);
+                errors += recorder.errors.getOrDefault(operation, 0);
+            }
+        }
+
+        long[] all = new long[count];
+        int offset = 0;
+        for (Recorder recorder : recorders) {
+            for (Operation operation : operations) {
+                int n = recorder.counts.getOrDefault(operation, 0);
+                if (n > 0) {
+                    System.arraycopy(recorder.latencies.get(operation), 0, all, offset, n);
+                    offset += n;
+                }
+            }
+        }
+        Arrays.sort(all);
+        return new Stats(name, count, errors, count / seconds,
+                percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static void check(List<String> breaches, String metric, double actual, double limit) {
+        if (actual > limit) {
+            breaches.add(String.format("%s %.3f > %.3f", metric, actual, limit));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package library.benchmarks;
+
+import library.dto.BookListItem;
+import library.dto.LoanedBookView;
+import library.models.Book;
+import library.services.BooksService;
+import library.services.PeopleService;
+import library.util.KeysetPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Горячие пути сервисного и репозиторного слоя на встроенной БД.
+ * Запуск всех бенчмарков с сохранением результатов: см. BenchmarkRunner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmarks {
+
+    @Param({"10000", "100000"})
+    private int catalogSize;
+
+    private BooksService booksService;
+    private PeopleService peopleService;
+    private int readers;
+
+    // Каждый поток выдачи/возврата получает свою свободную книгу из зарезервированного диапазона
+    private final AtomicInteger nextFreeBook = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class LoanSlot {
+        private long bookId;
+        private long personId;
+
+        @Setup(Level.Trial)
+        public void setUp(ServiceBenchmarks benchmarks) {
+            bookId = benchmarks.catalogSize - benchmarks.nextFreeBook.getAndIncrement();
+            personId = 1 + bookId % benchmarks.readers;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConfigurableApplicationContext context = BenchmarkContext.start(catalogSize);
+        booksService = context.getBean(BooksService.class);
+        peopleService = context.getBean(PeopleService.class);
+        readers = BenchmarkContext.readers(catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkContext.stop();
+    }
+
+    @Benchmark
+    public KeysetPage<BookListItem> findPageSortedByYear() {
+        return booksService.findPage(null, null, 20, true);
+    }
+
+    @Benchmark
+    public List<BookListItem> findAllOffsetPage() {
+        int page = ThreadLocalRandom.current().nextInt(catalogSize / 20);
+        return booksService.findAll(page, 20, true);
+    }
+
+    @Benchmark
+    public Book findOne() {
+        return booksService.findOne(1 + ThreadLocalRandom.current().nextInt(catalogSize));
+    }
+
+    @Benchmark
+    public List<BookListItem> searchByName() {
+        return booksService.searchByName("Книга " + ThreadLocalRandom.current().nextInt(1, 1000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void assignAndRelease(LoanSlot slot) {
+        booksService.assign(slot.bookId, slot.personId);
+        booksService.release(slot.bookId, slot.personId);
+    }
+
+    @Benchmark
+    public List<LoanedBookView> getBooksByPersonId() {
+        return peopleService.getBooksByPersonId(1 + ThreadLocalRandom.current().nextInt(readers));
+    }
+}
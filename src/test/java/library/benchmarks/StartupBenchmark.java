@@ -0,0 +1,95 @@
+package library.benchmarks;
+
+import library.SpringProjectApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время запуска приложения в отдельной JVM: от старта процесса до обновления контекста и выхода
+ * (spring.context.exit=onRefresh). Режимы: обычный, профиль startup, профиль startup с архивом CDS
+ * и, с -Dbenchmark.aot=true, дополнительно с AOT (классы process-aot должны быть в classpath).
+ * Приложение работает на встроенной H2 (профиль bench), поэтому замер не зависит от внешней БД.
+ *
+ * Запуск: mvn test -Dbenchmark=true -Dtest=StartupBenchmark [-Dbenchmark.startupRuns=5 -Dbenchmark.aot=true]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Slf4j
+class StartupBenchmark {
+    private static final int RUNS = Integer.getInteger("benchmark.startupRuns", 5);
+    private static final boolean AOT = Boolean.getBoolean("benchmark.aot");
+    private static final String DEFAULT_PROFILES = "bench";
+    private static final String STARTUP_PROFILES = "bench,startup";
+
+    @Test
+    void startupModes() throws Exception {
+        Path workDir = Files.createTempDirectory("library-startup");
+        Path archive = workDir.resolve("library.jsa");
+
+        List<String> report = new ArrayList<>();
+        report.add(measure("default", List.of(), DEFAULT_PROFILES, workDir));
+        report.add(measure("startup", List.of(), STARTUP_PROFILES, workDir));
+
+        // Тренировочный запуск записывает архив загруженных классов, замеры его используют
+        launch(List.of("-XX:ArchiveClassesAtExit=" + archive), STARTUP_PROFILES, workDir);
+        report.add(measure("startup+cds", List.of("-XX:SharedArchiveFile=" + archive), STARTUP_PROFILES, workDir));
+        if (AOT) {
+            report.add(measure("startup+cds+aot", List.of("-XX:SharedArchiveFile=" + archive, "-Dspring.aot.enabled=true"),
+                    STARTUP_PROFILES, workDir));
+        }
+
+        StringBuilder text = new StringBuilder(String.format("%n%-16s %10s %10s %10s%n", "mode", "min ms", "p50 ms", "max ms"));
+        report.forEach(line -> text.append(line).append(System.lineSeparator()));
+        log.info(text.toString());
+    }
+
+    private static String measure(String name, List<String> jvmOptions, String profiles, Path workDir)
+            throws IOException, InterruptedException {
+        long[] millis = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            millis[i] = launch(jvmOptions, profiles, workDir);
+        }
+        Arrays.sort(millis);
+        return String.format("%-16s %10d %10d %10d", name, millis[0], millis[RUNS / 2], millis[RUNS - 1]);
+    }
+
+    // Запускает приложение в новой JVM и возвращает время до её завершения в миллисекундах
+    private static long launch(List<String> jvmOptions, String profiles, Path workDir)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmOptions);
+        command.add("-Dspring.context.exit=onRefresh");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SpringProjectApplication.class.getName());
+        command.add("--spring.profiles.active=" + profiles);
+        // Профиль startup не создаёт таблицы, а в H2 в памяти их создаёт только Hibernate
+        command.add("--spring.jpa.hibernate.ddl-auto=create");
+        command.add("--server.port=0");
+
+        Path output = workDir.resolve("startup.log");
+        long startNanos = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .start();
+        if (!process.waitFor(2, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("Приложение не запустилось за 2 минуты, лог: " + output);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException("Приложение завершилось с кодом " + process.exitValue() + ", лог: " + output);
+        }
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,109 @@
+package library.benchmarks;
+
+import library.services.BooksService;
+import library.services.PeopleService;
+import library.util.AdmissionRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.NestedExceptionUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Платформенные потоки против виртуальных при высокой конкуренции.
+ * Каждая задача имитирует запрос: чтение книги и книг читателя через сервисы плюс ожидание
+ * внешнего ввода-вывода. Соединения с БД выдаются через DbAdmissionLimiter.
+ *
+ * Запуск: mvn test -Dbenchmark=true -Dtest=ThreadModelBenchmark [-Dbenchmark.requests=20000 -Dbenchmark.platformThreads=200]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Slf4j
+class ThreadModelBenchmark {
+    private static final int BOOKS = 10_000;
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 20_000);
+    private static final int PLATFORM_THREADS = Integer.getInteger("benchmark.platformThreads", 200);
+    private static final long IO_WAIT_MILLIS = Long.getLong("benchmark.ioWaitMillis", 20);
+
+    private static BooksService booksService;
+    private static PeopleService peopleService;
+    private static int readers;
+
+    @BeforeAll
+    static void startApplication() {
+        System.setProperty("library.db-admission.enabled", "true");
+        var context = BenchmarkContext.start(BOOKS);
+        booksService = context.getBean(BooksService.class);
+        peopleService = context.getBean(PeopleService.class);
+        readers = BenchmarkContext.readers(BOOKS);
+    }
+
+    @AfterAll
+    static void stopApplication() {
+        BenchmarkContext.stop();
+        System.clearProperty("library.db-admission.enabled");
+    }
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        // Прогрев JIT и кэшей на том же объёме, что и замер
+        run("warmup", Executors.newFixedThreadPool(PLATFORM_THREADS));
+
+        log.info(String.format("%-10s %10s %10s %10s %10s", "threads", "req/s", "p50 ms", "p99 ms", "rejected"));
+        log.info(run("platform", Executors.newFixedThreadPool(PLATFORM_THREADS)));
+        log.info(run("virtual", Executors.newVirtualThreadPerTaskExecutor()));
+    }
+
+    private String run(String name, ExecutorService executor) throws Exception {
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(REQUESTS);
+
+        long start = System.nanoTime();
+        try (executor) {
+            for (int i = 0; i < REQUESTS; i++) {
+                int slot = i;
+                long submitted = System.nanoTime();
+                futures.add(executor.submit(() -> {
+                    try {
+                        handleRequest();
+                    } catch (RuntimeException e) {
+                        // Отказ ограничителя приходит при получении соединения, обёрнутым менеджером транзакций
+                        if (!(NestedExceptionUtils.getRootCause(e) instanceof AdmissionRejectedException)
+                                && !(e instanceof AdmissionRejectedException)) {
+                            throw e;
+                        }
+                        rejected.incrementAndGet();
+                    }
+                    latencies[slot] = System.nanoTime() - submitted;
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Arrays.sort(latencies);
+        return String.format("%-10s %10.0f %10.2f %10.2f %10d", name, REQUESTS / seconds,
+                latencies[REQUESTS / 2] / 1_000_000.0, latencies[(int) (REQUESTS * 0.99)] / 1_000_000.0, rejected.get());
+    }
+
+    private static void handleRequest() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        booksService.findOne(1 + random.nextInt(BOOKS));
+        // Внешний ввод-вывод (шаблон, сеть) без удержания соединения с БД
+        Thread.sleep(IO_WAIT_MILLIS);
+        peopleService.getBooksByPersonId(1 + random.nextInt(readers));
+    }
+}
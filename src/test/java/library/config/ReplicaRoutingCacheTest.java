@@ -0,0 +1,101 @@
+package library.config;
+
+import library.SpringProjectApplication;
+import library.models.Book;
+import library.models.Person;
+import library.services.BooksService;
+import library.services.PeopleService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Маршрутизация на реплику вместе с кэшем второго уровня (в ReplicaRoutingTest он выключен):
+ * старая строка, прочитанная с отстающей реплики, не должна попасть в общий кэш.
+ */
+@SpringBootTest(classes = SpringProjectApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary_cached;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+        "library.replica.enabled=true",
+        "library.replica.datasource.url=jdbc:h2:mem:replica_cached;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+        "library.replica.datasource.username=sa",
+        "library.replica.datasource.password=",
+        "library.replica.datasource.driver-class-name=org.h2.Driver",
+        "library.replica.lag-query=SELECT 0",
+        "library.replica.lag-check-interval=50ms",
+        "library.replica.sticky-window=5s"
+})
+@ActiveProfiles("bench")
+class ReplicaRoutingCacheTest {
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primary;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replica;
+
+    @TempDir
+    Path snapshotDir;
+
+    @Test
+    void staleReplicaReadDoesNotReachSharedCache() throws Exception {
+        Person reader = new Person();
+        reader.setName("Читатель " + System.nanoTime());
+        reader.setYearOfBirth(1990);
+        peopleService.save(reader);
+
+        Book book = new Book();
+        book.setTitle("Книга для кэша");
+        book.setAuthor("Тестовый автор");
+        book.setYearOfRelease(2005);
+        booksService.save(book);
+        replicate();
+        Thread.sleep(200); // Монитор отставания успевает сделать первую проверку
+
+        // Выдача на основной БД сбрасывает книгу из кэша; на реплике книга ещё свободна
+        booksService.assign(book.getId(), reader.getId());
+
+        ExecutorService otherClient = Executors.newSingleThreadExecutor();
+        try {
+            assertNull(otherClient.submit(() -> booksService.findOne(book.getId()).getOwner()).get());
+        } finally {
+            otherClient.shutdownNow();
+        }
+
+        // Писавший клиент читает с основной БД и не получает старую строку из кэша
+        assertEquals(reader.getId(), booksService.findOne(book.getId()).getOwner().getId());
+        // И после того как кэш заполнен с основной БД, его видят все
+        ExecutorService lateClient = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(reader.getId(), lateClient.submit(() -> booksService.findOne(book.getId()).getOwner().getId()).get());
+        } finally {
+            lateClient.shutdownNow();
+        }
+    }
+
+    private void replicate() {
+        String file = snapshotDir.resolve("snapshot.sql").toString().replace('\\', '/');
+        new JdbcTemplate(primary).execute("SCRIPT TO '" + file + "'");
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replica);
+        replicaJdbc.execute("DROP ALL OBJECTS");
+        replicaJdbc.execute("RUNSCRIPT FROM '" + file + "'");
+    }
+}
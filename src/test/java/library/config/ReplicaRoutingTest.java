@@ -0,0 +1,149 @@
+package library.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import library.SpringProjectApplication;
+import library.models.Book;
+import library.services.BooksService;
+import library.util.ResourceNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+
+/**
+ * Маршрутизация чтений на реплику на двух встроенных H2. Репликация имитируется снимком:
+ * SCRIPT основной БД и RUNSCRIPT на реплике, поэтому между снимками реплика "отстаёт" и видно,
+ * с какой БД читает сервис.
+ */
+@SpringBootTest(classes = SpringProjectApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+        "library.replica.enabled=true",
+        "library.replica.datasource.url=jdbc:h2:mem:replica;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+        "library.replica.datasource.username=sa",
+        "library.replica.datasource.password=",
+        "library.replica.datasource.driver-class-name=org.h2.Driver",
+        "library.replica.lag-query=SELECT 0",
+        "library.replica.lag-check-interval=50ms",
+        "library.replica.sticky-window=5s",
+        // Без кэша второго уровня чтение действительно доходит до выбранной БД
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false"
+})
+@ActiveProfiles("bench")
+@AutoConfigureMockMvc
+class ReplicaRoutingTest {
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primary;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replica;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @TempDir
+    Path snapshotDir;
+
+    @Test
+    void readsGoToReplicaExceptRightAfterOwnWrite() throws Exception {
+        replicate();
+        Thread.sleep(200); // Монитор отставания успевает сделать первую проверку
+
+        Book book = new Book();
+        book.setTitle("Книга с основной БД");
+        book.setAuthor("Тестовый автор");
+        book.setYearOfRelease(2005);
+        booksService.save(book);
+
+        // Поток, который только что писал, читает свою запись с основной БД
+        assertEquals(book.getTitle(), booksService.findOne(book.getId()).getTitle());
+
+        // Другой клиент читает с реплики, куда книга ещё не попала
+        ExecutorService otherClient = Executors.newSingleThreadExecutor();
+        try {
+            assertFalse(otherClient.submit(() -> exists(book.getId())).get());
+
+            replicate();
+            assertTrue(otherClient.submit(() -> exists(book.getId())).get());
+        } finally {
+            otherClient.shutdownNow();
+        }
+
+        assertTrue(routed("replica", "read-only") > 0);
+        assertTrue(routed("primary", "sticky") > 0);
+        assertTrue(routed("primary", "read-write") > 0);
+    }
+
+    @Test
+    void writeAfterReadInOneRequestGoesToPrimary() throws Exception {
+        replicate();
+        Thread.sleep(200); // Монитор отставания успевает сделать первую проверку
+        String name = "Читатель " + System.nanoTime();
+        double replicaReads = routed("replica", "read-only");
+
+        // Новый клиент без cookie последней записи: проверка имени в валидаторе читает с реплики,
+        // а сохранение в том же запросе (open-in-view) должно взять соединение основной БД
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            client.submit(() -> mockMvc.perform(post("/people")
+                            .param("name", name)
+                            .param("yearOfBirth", "1990"))
+                    .andExpect(redirectedUrl("/people"))).get();
+        } finally {
+            client.shutdownNow();
+        }
+
+        assertTrue(routed("replica", "read-only") > replicaReads);
+        assertEquals(1, countPeople(primary, name));
+        assertEquals(0, countPeople(replica, name));
+    }
+
+    private int countPeople(DataSource dataSource, String name) {
+        Integer count = new JdbcTemplate(dataSource).queryForObject(
+                "SELECT COUNT(*) FROM person WHERE name = ?", Integer.class, name);
+        return count == null ? 0 : count;
+    }
+
+    private boolean exists(long bookId) {
+        try {
+            booksService.findOne(bookId);
+            return true;
+        } catch (ResourceNotFoundException e) {
+            return false;
+        }
+    }
+
+    private double routed(String target, String reason) {
+        return meterRegistry.get("library.datasource.route").tag("target", target).tag("reason", reason).counter().count();
+    }
+
+    private void replicate() {
+        String file = snapshotDir.resolve("snapshot.sql").toString().replace('\\', '/');
+        new JdbcTemplate(primary).execute("SCRIPT TO '" + file + "'");
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replica);
+        replicaJdbc.execute("DROP ALL OBJECTS");
+        replicaJdbc.execute("RUNSCRIPT FROM '" + file + "'");
+    }
+}
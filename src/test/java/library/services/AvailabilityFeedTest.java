@@ -0,0 +1,85 @@
+package library.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import library.events.LoanEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Переподключение к потоку доступности: клиент, пропустивший изменения, должен получить resync.
+ * Отправка событий не проверяется - только решение о resync (счётчик library.availability.resync).
+ */
+class AvailabilityFeedTest {
+
+    private final List<AvailabilityFeed> feeds = new ArrayList<>();
+
+    @AfterEach
+    void stopFeeds() {
+        feeds.forEach(AvailabilityFeed::stop);
+    }
+
+    @Test
+    void reconnectAfterIdlePeriodGetsResync() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AvailabilityFeed feed = newFeed(registry);
+        String lastSeen = feed.currentEventId();
+
+        // Единственный экран отключился, и пока подписчиков нет, книгу выдали
+        feed.onLoanEvent(LoanEvent.checkout(1, 1));
+
+        feed.subscribe(List.of(1L), lastSeen);
+        assertEquals(1, resyncs(registry));
+    }
+
+    @Test
+    void reconnectWithoutMissedUpdatesGetsNoResync() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AvailabilityFeed feed = newFeed(registry);
+        feed.onLoanEvent(LoanEvent.checkout(1, 1));
+
+        feed.subscribe(List.of(1L), feed.currentEventId());
+        feed.subscribe(List.of(1L), null);
+        assertEquals(0, resyncs(registry));
+    }
+
+    @Test
+    void idFromAnotherEpochGetsResync() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AvailabilityFeed before = newFeed(new SimpleMeterRegistry());
+        for (int i = 0; i < 5; i++) {
+            before.onLoanEvent(LoanEvent.checkout(i, 1));
+        }
+        // Перезапуск или другой экземпляр: его счётчик меньше, но id прежнего запуска ему не подходит
+        AvailabilityFeed after = newFeed(registry);
+
+        after.subscribe(List.of(), before.currentEventId());
+        assertEquals(1, resyncs(registry));
+
+        after.subscribe(List.of(), "повреждённый id");
+        assertEquals(2, resyncs(registry));
+    }
+
+    private AvailabilityFeed newFeed(MeterRegistry registry) {
+        AvailabilityFeed feed = new AvailabilityFeed(registry);
+        ReflectionTestUtils.setField(feed, "maxSubscribers", 100);
+        ReflectionTestUtils.setField(feed, "maxPending", 16);
+        ReflectionTestUtils.setField(feed, "maxWatchedBooks", 10);
+        ReflectionTestUtils.setField(feed, "heartbeatInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(feed, "emitterTimeout", Duration.ofHours(1));
+        feed.start();
+        feeds.add(feed);
+        return feed;
+    }
+
+    private static double resyncs(MeterRegistry registry) {
+        return registry.get("library.availability.resync").counter().count();
+    }
+}
@@ -1,4 +1,415 @@
+package library.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import library.SpringProjectApplication;
+import library.dto.BookFacets;
+import library.dto.BookFilter;
+import library.dto.BookListItem;
+import library.dto.BulkLoanResult;
+import library.dto.HoldResult;
+import library.models.Book;
+import library.models.BookLoan;
+import library.models.Person;
+import library.repositories.BookLoanRepository;
+import library.util.KeysetPage;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CollectionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = SpringProjectApplication.class)
+@Slf4j
 class BooksServiceTest {
-  
-}
\ No newline at end of file
+    private static final int CLERKS = 16;
+    private static final int ROUNDS = 50;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private BookLoanRepository bookLoanRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CirculationStats circulationStats;
+
+    @Autowired
+    private OverdueScanner overdueScanner;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BookHoldService bookHoldService;
+
+    private final List<Person> clerks = new ArrayList<>();
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        clerks.clear();
+        for (int i = 0; i < CLERKS; i++) {
+            Person person = new Person();
+            person.setName("Читатель " + System.nanoTime() + "-" + i);
+            person.setYearOfBirth(1990);
+            peopleService.save(person);
+            clerks.add(person);
+        }
+
+        book = new Book();
+        book.setTitle("Конкурентная книга");
+        book.setAuthor("Тестовый автор");
+        book.setYearOfRelease(2000);
+        booksService.save(book);
+    }
+
+    @Test
+    void concurrentAssignHasExactlyOneWinner() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CLERKS);
+        long totalAttempts = 0;
+        long startNanos = System.nanoTime();
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                CountDownLatch start = new CountDownLatch(1);
+                AtomicInteger winners = new AtomicInteger();
+                AtomicInteger conflicts = new AtomicInteger();
+                List<Future<Long>> futures = new ArrayList<>();
+
+                for (Person clerk : clerks) {
+                    Callable<Long> attempt = () -> {
+                        start.await();
+                        try {
+                            booksService.assign(book.getId(), clerk.getId());
+                            winners.incrementAndGet();
+                            return clerk.getId();
+                        } catch (IllegalStateException e) {
+                            conflicts.incrementAndGet();
+                            return null;
+                        }
+                    };
+                    futures.add(executor.submit(attempt));
+                }
+                start.countDown();
+
+                Long winnerId = null;
+                for (Future<Long> future : futures) {
+                    Long id = future.get(30, TimeUnit.SECONDS);
+                    if (id != null) {
+                        winnerId = id;
+                    }
+                }
+                totalAttempts += CLERKS;
+
+                assertEquals(1, winners.get(), "Книгу должен получить ровно один читатель");
+                assertEquals(CLERKS - 1, conflicts.get());
+                assertEquals(winnerId, booksService.getBookOwner(book.getId()).getId());
+
+                booksService.release(book.getId(), winnerId);
+                assertNull(booksService.getBookOwner(book.getId()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        log.info("Конкурентная выдача: {} попыток за {} c, {} попыток/с",
+                totalAttempts, String.format("%.2f", seconds), String.format("%.0f", totalAttempts / seconds));
+    }
+
+    @Test
+    void releaseByAnotherPersonIsRejected() {
+        Person owner = clerks.get(0);
+        Person stranger = clerks.get(1);
+        booksService.assign(book.getId(), owner.getId());
+
+        assertThrows(IllegalStateException.class, () -> booksService.release(book.getId(), stranger.getId()));
+        assertEquals(owner.getId(), booksService.getBookOwner(book.getId()).getId());
+
+        booksService.release(book.getId(), owner.getId());
+    }
+
+    @Test
+    void checkoutAndReturnAreRecordedInLoanHistory() throws InterruptedException {
+        Person reader = clerks.get(0);
+        booksService.assign(book.getId(), reader.getId());
+        booksService.release(book.getId(), reader.getId());
+
+        // История пишется фоновым писателем, поэтому ждём появления записи
+        List<BookLoan> loans = List.of();
+        for (int attempt = 0; attempt < 50 && (loans.isEmpty() || loans.get(0).getReturnDate() == null); attempt++) {
+            Thread.sleep(100);
+            loans = bookLoanRepository.findByPersonId(reader.getId());
+        }
+
+        assertEquals(1, loans.size());
+        assertEquals(book.getId(), loans.get(0).getBookId());
+        assertNotNull(loans.get(0).getReturnDate());
+    }
+
+    @Test
+    void repeatedLookupIsServedFromSecondLevelCache() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        booksService.findOne(book.getId());
+
+        long hitsBefore = statistics.getSecondLevelCacheHitCount();
+        booksService.findOne(book.getId());
+
+        assertTrue(statistics.getSecondLevelCacheHitCount() > hitsBefore);
+    }
+
+    @Test
+    void cachedOwnerIsNeverStaleAfterCheckoutAndReturn() {
+        Person reader = clerks.get(0);
+        CollectionStatistics personBooks = entityManagerFactory.unwrap(SessionFactory.class).getStatistics()
+                .getCollectionStatistics(Person.class.getName() + ".books");
+
+        // Прогреваем кэш: книга свободна, у читателя книг нет; повторное чтение коллекции идёт из кэша
+        assertNull(booksService.findOne(book.getId()).getOwner());
+        List<Long> booksBefore = personBookIds(reader.getId());
+        long hitsBefore = personBooks.getCacheHitCount();
+        assertEquals(booksBefore, personBookIds(reader.getId()));
+        assertTrue(personBooks.getCacheHitCount() > hitsBefore);
+
+        booksService.assign(book.getId(), reader.getId());
+        assertEquals(reader.getId(), booksService.findOne(book.getId()).getOwner().getId());
+        assertTrue(personBookIds(reader.getId()).contains(book.getId()));
+
+        booksService.release(book.getId(), reader.getId());
+        assertNull(booksService.findOne(book.getId()).getOwner());
+        assertEquals(booksBefore, personBookIds(reader.getId()));
+    }
+
+    // Коллекция Person.books, прочитанная через сущность (а не проекцией), - именно она лежит в кэше
+    private List<Long> personBookIds(long personId) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                peopleService.findOne(personId).getBooks().stream().map(Book::getId).sorted().toList());
+    }
+
+    @Test
+    void catalogPageLoadsOwnersInSingleQuery() {
+        // Несколько книг у разных владельцев: раньше каждый владелец давал отдельный SELECT
+        List<Long> bookIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Book owned = new Book();
+            owned.setTitle("Книга со владельцем " + i);
+            owned.setAuthor("Тестовый автор");
+            owned.setYearOfRelease(2001);
+            booksService.save(owned);
+            booksService.assign(owned.getId(), clerks.get(i).getId());
+            bookIds.add(owned.getId());
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+        long statementsBefore = statistics.getPrepareStatementCount();
+
+        KeysetPage<BookListItem> page = booksService.findPage(null, null, 100, false);
+
+        assertEquals(1, statistics.getPrepareStatementCount() - statementsBefore,
+                "Страница каталога должна загружаться одним запросом");
+        assertTrue(page.items().stream()
+                .filter(item -> bookIds.contains(item.getId()))
+                .allMatch(item -> item.getOwnerName() != null));
+
+        for (int i = 0; i < bookIds.size(); i++) {
+            booksService.release(bookIds.get(i), clerks.get(i).getId());
+        }
+    }
+
+    @Test
+    void staleVersionIsRejectedAndLoansBumpVersion() {
+        Person reader = clerks.get(0);
+        long initial = booksService.findOne(book.getId()).getVersion();
+
+        booksService.assign(book.getId(), reader.getId(), initial);
+        long afterCheckout = booksService.findOne(book.getId()).getVersion();
+        assertTrue(afterCheckout > initial, "Выдача должна увеличивать версию книги");
+
+        // Клиент с устаревшим ETag не может ни вернуть, ни переписать книгу
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> booksService.release(book.getId(), reader.getId(), initial));
+        Book changed = new Book();
+        changed.setTitle("Новое название");
+        changed.setAuthor("Тестовый автор");
+        changed.setYearOfRelease(2000);
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> booksService.update(book.getId(), changed, initial));
+
+        Book updated = booksService.update(book.getId(), changed, afterCheckout);
+        assertEquals("Новое название", booksService.findOne(book.getId()).getTitle());
+        assertEquals(reader.getId(), booksService.findOne(book.getId()).getOwner().getId(),
+                "Обновление полей не должно снимать выдачу");
+        assertNotNull(booksService.findOne(book.getId()).getTakenAt());
+
+        booksService.release(book.getId(), reader.getId(), updated.getVersion());
+    }
+
+    @Test
+    void bulkCheckoutReportsEveryBookAndRunsConstantQueries() {
+        Person reader = clerks.get(0);
+        Person other = clerks.get(1);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Book copy = new Book();
+            copy.setTitle("Экземпляр " + i);
+            copy.setAuthor("Тестовый автор");
+            copy.setYearOfRelease(2002);
+            booksService.save(copy);
+            ids.add(copy.getId());
+        }
+        booksService.assign(ids.get(0), other.getId());
+        long missingId = -1;
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+        List<Long> request = new ArrayList<>(ids);
+        request.add(missingId);
+        BulkLoanResult result = booksService.assignAll(request, reader.getId());
+        long statements = statistics.getPrepareStatementCount() - statementsBefore;
+
+        assertEquals(19, result.succeeded());
+        assertEquals(BulkLoanResult.Status.CONFLICT, result.items().get(0).status());
+        assertEquals(BulkLoanResult.Status.NOT_FOUND, result.items().get(20).status());
+        assertTrue(statements <= 4, "Массовая выдача не должна делать запрос на каждую книгу, выполнено: " + statements);
+        assertEquals(19, peopleService.getBooksByPersonId(reader.getId()).size());
+
+        // Возврат из ящика: владелец не указан, книга другого читателя тоже возвращается
+        BulkLoanResult returned = booksService.releaseAll(ids, null);
+        assertEquals(20, returned.succeeded());
+        assertTrue(peopleService.getBooksByPersonId(reader.getId()).isEmpty());
+        assertNull(booksService.getBookOwner(ids.get(0)));
+    }
+
+    @Test
+    void activeLoansFollowCheckoutsAndReturnsWithoutQueries() {
+        Person reader = clerks.get(0);
+        long todayBefore = circulationStats.loansPerDay(1).get(0).loans();
+        assertEquals(0, circulationStats.activeLoans(reader.getId()));
+
+        booksService.assign(book.getId(), reader.getId());
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+        assertEquals(1, circulationStats.activeLoans(reader.getId()));
+        assertEquals(todayBefore + 1, circulationStats.loansPerDay(1).get(0).loans());
+        assertEquals(statementsBefore, statistics.getPrepareStatementCount(), "Чтение статистики не должно обращаться к БД");
+
+        booksService.release(book.getId(), reader.getId());
+        assertEquals(0, circulationStats.activeLoans(reader.getId()));
+    }
+
+    @Test
+    void overdueScanFlagsLoanOnceAndReturnClearsFlag() {
+        Person reader = clerks.get(0);
+        booksService.assign(book.getId(), reader.getId());
+        jdbcTemplate.update("UPDATE book SET taken_at = ? WHERE id = ?",
+                new Date(System.currentTimeMillis() - Duration.ofDays(30).toMillis()), book.getId());
+
+        long runId = System.currentTimeMillis();
+        OverdueScanner.ScanReport report = overdueScanner.scan(runId);
+        assertTrue(report.flagged() >= 1);
+        Date flaggedAt = booksService.findOne(book.getId()).getOverdueNotifiedAt();
+        assertNotNull(flaggedAt);
+
+        // Завершённый запуск повторно не захватывается, а новый не отмечает выдачу второй раз
+        assertEquals(0, overdueScanner.scan(runId).partitions());
+        overdueScanner.scan(runId + 1);
+        assertEquals(flaggedAt, booksService.findOne(book.getId()).getOverdueNotifiedAt());
+
+        booksService.release(book.getId(), reader.getId());
+        assertNull(booksService.findOne(book.getId()).getOverdueNotifiedAt());
+    }
+
+    @Test
+    void filteredPagesAndFacetsCombineAuthorYearsAndAvailability() {
+        String author = "Фасетный автор " + System.nanoTime();
+        List<Long> ids = new ArrayList<>();
+        for (int year : new int[]{1995, 2001, 2005}) {
+            Book copy = new Book();
+            copy.setTitle("Издание " + year);
+            copy.setAuthor(author);
+            copy.setYearOfRelease(year);
+            booksService.save(copy);
+            ids.add(copy.getId());
+        }
+        booksService.assign(ids.get(1), clerks.get(0).getId());
+
+        BookFilter byAuthor = new BookFilter(author, null, null, false);
+        KeysetPage<BookListItem> first = booksService.findPage(null, null, 2, true, byAuthor);
+        assertEquals(List.of(ids.get(0), ids.get(1)), first.items().stream().map(BookListItem::getId).toList());
+        KeysetPage<BookListItem> second = booksService.findPage(first.nextCursor(), null, 2, true, byAuthor);
+        assertEquals(List.of(ids.get(2)), second.items().stream().map(BookListItem::getId).toList());
+        assertFalse(second.hasNext());
+
+        KeysetPage<BookListItem> available = booksService.findPage(null, null, 10, false,
+                new BookFilter(author, 2000, null, true));
+        assertEquals(List.of(ids.get(2)), available.items().stream().map(BookListItem::getId).toList());
+
+        BookFacets facets = booksService.facets(new BookFilter(author, 2000, null, false));
+        assertEquals(2, facets.total());
+        assertEquals(1, facets.available());
+        assertEquals(1, facets.taken());
+        // Десятилетия не учитывают диапазон лет: видно, что за его пределами есть ещё книга
+        assertEquals(Map.of(1990, 1L, 2000, 2L), facets.decades());
+    }
+
+    @Test
+    void releaseHandsBookToFirstHolderInQueueOrder() throws InterruptedException {
+        Person owner = clerks.get(0);
+        Person first = clerks.get(1);
+        Person second = clerks.get(2);
+        assertEquals(HoldResult.Status.ASSIGNED, bookHoldService.placeHold(book.getId(), owner.getId()).status());
+
+        assertEquals(HoldResult.queued(book.getId(), first.getId(), 1), bookHoldService.placeHold(book.getId(), first.getId()));
+        assertEquals(HoldResult.queued(book.getId(), second.getId(), 2), bookHoldService.placeHold(book.getId(), second.getId()));
+        // Повторная заявка не двигает читателя в конец очереди
+        assertEquals(1, bookHoldService.placeHold(book.getId(), first.getId()).position());
+        assertThrows(IllegalStateException.class, () -> bookHoldService.placeHold(book.getId(), owner.getId()));
+
+        booksService.release(book.getId(), owner.getId());
+        assertEquals(first.getId(), booksService.getBookOwner(book.getId()).getId());
+
+        // Зеркало очередей перечитывается после коммита в фоне, поэтому ждём, пока второй станет первым
+        for (int attempt = 0; attempt < 50 && bookHoldService.position(book.getId(), second.getId()) != 1; attempt++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, bookHoldService.position(book.getId(), second.getId()));
+        assertEquals(0, bookHoldService.position(book.getId(), first.getId()));
+
+        booksService.release(book.getId(), first.getId());
+        assertEquals(second.getId(), booksService.getBookOwner(book.getId()).getId());
+        booksService.release(book.getId(), second.getId());
+        assertNull(booksService.getBookOwner(book.getId()));
+    }
+}
@@ -0,0 +1,85 @@
+package library.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import library.SpringProjectApplication;
+import library.events.LoanEvent;
+import library.repositories.BooksRepositories;
+import library.repositories.PeopleRepositories;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = SpringProjectApplication.class)
+class CirculationStatsTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BooksRepositories booksRepositories;
+
+    @Autowired
+    private PeopleRepositories peopleRepositories;
+
+    // Перечитывание circulation_stats падает, пока выставлен failReload; запись приращений работает
+    private static final class FlakyJdbcTemplate extends JdbcTemplate {
+        volatile boolean failReload;
+
+        FlakyJdbcTemplate(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch) {
+            if (failReload && sql.startsWith("SELECT kind, stat_key, total FROM circulation_stats")) {
+                throw new DataAccessResourceFailureException("Соединение потеряно при перечитывании");
+            }
+            super.query(sql, rch);
+        }
+    }
+
+    @Test
+    void failedReloadDoesNotWriteDeltasTwice() {
+        FlakyJdbcTemplate jdbcTemplate = new FlakyJdbcTemplate(dataSource);
+        CirculationStats stats = new CirculationStats(jdbcTemplate, transactionManager,
+                booksRepositories, peopleRepositories, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(stats, "checkpointInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(stats, "topSize", 10);
+        stats.start();
+
+        // Ключи, которых нет в общей таблице: счётчики других тестов их не задевают
+        long bookId = Long.MAX_VALUE - System.nanoTime() % 1_000_000;
+        long personId = bookId;
+        stats.onLoanEvent(LoanEvent.checkout(bookId, personId));
+
+        jdbcTemplate.failReload = true;
+        stats.stop(); // Контрольная точка: приращения записаны, перечитывание упало
+        assertEquals(1, total(jdbcTemplate, "BOOK_LOANS", bookId));
+        assertEquals(1, stats.activeLoans(personId), "Записанные приращения не должны пропасть из значений в памяти");
+
+        jdbcTemplate.failReload = false;
+        stats.stop(); // Следующая контрольная точка не должна дописать те же приращения ещё раз
+        assertEquals(1, total(jdbcTemplate, "BOOK_LOANS", bookId));
+        assertEquals(1, total(jdbcTemplate, "ACTIVE_LOANS", personId));
+        assertEquals(1, stats.activeLoans(personId));
+    }
+
+    private long total(JdbcTemplate jdbcTemplate, String kind, long key) {
+        Long total = jdbcTemplate.queryForObject(
+                "SELECT total FROM circulation_stats WHERE kind = ? AND stat_key = ?", Long.class, kind, key);
+        return total == null ? 0 : total;
+    }
+}
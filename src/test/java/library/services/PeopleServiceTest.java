@@ -1,4 +1,99 @@
+package library.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import library.SpringProjectApplication;
+import library.dto.PersonListItem;
+import library.models.Book;
+import library.models.Person;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = SpringProjectApplication.class)
 class PeopleServiceTest {
-  
-}
\ No newline at end of file
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private BooksService booksService;
+
+    private Person person;
+
+    @BeforeEach
+    void setUp() {
+        person = new Person();
+        person.setName("Читатель " + System.nanoTime());
+        person.setYearOfBirth(1985);
+        peopleService.save(person);
+    }
+
+    @Test
+    void peopleListIsSingleQueryWithoutEntities() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+        long entityLoadsBefore = statistics.getEntityLoadCount();
+
+        List<PersonListItem> people = peopleService.findAll();
+
+        assertEquals(1, statistics.getPrepareStatementCount() - statementsBefore,
+                "Список читателей должен загружаться одним запросом");
+        assertEquals(0, statistics.getEntityLoadCount() - entityLoadsBefore,
+                "Список читателей не должен создавать управляемые сущности");
+        assertTrue(people.stream().anyMatch(item -> item.getId() == person.getId()));
+    }
+
+    @Test
+    void everyWriteBumpsCatalogVersion() {
+        long before = catalogVersion.current();
+        Person changed = new Person();
+        changed.setName(person.getName() + " (изменён)");
+        changed.setYearOfBirth(1986);
+
+        peopleService.update(person.getId(), changed);
+        long afterUpdate = catalogVersion.current();
+        assertTrue(afterUpdate > before, "Обновление читателя должно менять версию каталога");
+
+        peopleService.findAll();
+        assertEquals(afterUpdate, catalogVersion.current(), "Чтение не должно менять версию каталога");
+
+        peopleService.delete(person.getId());
+        assertTrue(catalogVersion.current() > afterUpdate);
+    }
+
+    @Test
+    void deletingReaderReleasesAllBooksInOneTransaction() {
+        Book first = newBook("Первая");
+        Book second = newBook("Вторая");
+        booksService.assign(first.getId(), person.getId());
+        booksService.assign(second.getId(), person.getId());
+
+        peopleService.deletePerson(person.getId());
+
+        assertNull(booksService.getBookOwner(first.getId()));
+        assertNull(booksService.getBookOwner(second.getId()));
+        assertNull(booksService.findOne(first.getId()).getTakenAt());
+    }
+
+    private Book newBook(String title) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setAuthor("Тестовый автор");
+        book.setYearOfRelease(2003);
+        booksService.save(book);
+        return book;
+    }
+}